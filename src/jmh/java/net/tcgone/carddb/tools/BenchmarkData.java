@@ -0,0 +1,175 @@
+package net.tcgone.carddb.tools;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.ByteStreams;
+import net.tcgone.carddb.model.Ability;
+import net.tcgone.carddb.model.Move;
+import net.tcgone.carddb.model.WeaknessResistance;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Benchmark input: the checked in pio/kirby fixture, or synthetic pio cards spread over all sets with a pio code,
+ * about a tenth of them reprints of cards from earlier sets. Synthetic output only depends on the card count.
+ * @author axpendix@hotmail.com
+ */
+final class BenchmarkData {
+
+	static final String FIXTURE = "fixture";
+
+	private static final ObjectMapper mapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+	private static final String[] SET_CODES = Arrays.stream(CoreCollection.values())
+			.map(CoreCollection::getPioCode).filter(Objects::nonNull).distinct().toArray(String[]::new);
+	private static final String[] TYPES = {"Fire", "Grass", "Water", "Fighting", "Colorless", "Lightning", "Psychic", "Darkness", "Metal", "Dragon", "Fairy"};
+	private static final String[] RARITIES = {"Common", "Common", "Common", "Uncommon", "Uncommon", "Rare", "Rare Holo", "Rare Holo GX", "Rare Ultra", "Rare Secret"};
+	private static final String[] TRAINER_SUBTYPES = {"Item", "Item", "Supporter", "Stadium", "Pokémon Tool"};
+	private static final String[] TEXTS = {
+			"Search your deck for a basic Fire Energy card and attach it to this Pokémon. Then, shuffle your deck.",
+			"Your opponent's Active Pokémon is now Paralyzed.",
+			"Flip a coin. If heads, this attack does 30 more damage.",
+			"This attack does 20 damage to each of your opponent's Benched Pokémon-GX and Pokémon-EX.",
+			"Prevent all effects of attacks, including damage, done to this Pokémon by your opponent's Pokémon with Water Energy attached.",
+			"Move any number of Lightning Energy from your Benched Pokémon to your Active Pokémon.",
+			"Discard 2 Metal Energy from this Pokémon. Heal 60 damage from this Pokémon.",
+			"Draw cards until you have 6 cards in your hand.",
+			"Each Psychic Pokémon and Darkness Pokémon in play has no Retreat Cost.",
+			"Attach up to 2 basic Grass Energy cards from your discard pile to your Benched Pokémon in any way you like.",
+			"This card provides Colorless Energy.",
+			"The Pokémon this card is attached to takes 20 less damage from your opponent's Fighting Pokémon."
+	};
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * @param cards {@link #FIXTURE} or a card count
+	 */
+	static byte[] json(String cards) throws IOException {
+		if(FIXTURE.equals(cards)){
+			try (InputStream in = BenchmarkData.class.getResourceAsStream("/fixtures/sm10-sample.json")) {
+				return ByteStreams.toByteArray(in);
+			}
+		}
+		return mapper.writeValueAsBytes(generate(Integer.parseInt(cards)));
+	}
+
+	static List<PioCard> generate(int count) {
+		Random random = new Random(count);
+		int perSet = (count + SET_CODES.length - 1) / SET_CODES.length;
+		List<PioCard> cards = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			int setStart = i - i % perSet;
+			PioCard pc;
+			if(setStart > 0 && random.nextInt(10) == 0){
+				pc = mapper.convertValue(cards.get(random.nextInt(setStart)), PioCard.class);
+			} else {
+				pc = generateCard(random, i);
+			}
+			pc.setCode = SET_CODES[i / perSet];
+			pc.number = String.valueOf(i - setStart + 1);
+			pc.id = pc.setCode + "-" + pc.number;
+			pc.set = pc.setCode;
+			pc.series = "Synthetic";
+			pc.artist = "Artist " + random.nextInt(100);
+			cards.add(pc);
+		}
+		return cards;
+	}
+
+	private static PioCard generateCard(Random random, int i) {
+		PioCard pc = new PioCard();
+		pc.rarity = pick(random, RARITIES);
+		int kind = random.nextInt(20);
+		if(kind < 12){
+			pc.supertype = "Pokémon";
+			pc.name = "Synthmon " + i + (random.nextInt(8) == 0 ? "-GX" : "");
+			switch (random.nextInt(3)) {
+				case 0:
+					pc.subtype = "Basic";
+					break;
+				case 1:
+					pc.subtype = "Stage 1";
+					pc.evolvesFrom = "Synthmon " + (i - 1);
+					break;
+				default:
+					pc.subtype = "Stage 2";
+					pc.evolvesFrom = "Synthmon " + (i - 1);
+					break;
+			}
+			pc.hp = String.valueOf(60 + 10 * random.nextInt(20));
+			pc.types = Collections.singletonList(pick(random, TYPES));
+			pc.convertedRetreatCost = random.nextInt(4);
+			pc.retreatCost = Collections.nCopies(pc.convertedRetreatCost, "Colorless");
+			pc.attacks = new ArrayList<>();
+			for (int a = 1 + random.nextInt(2); a > 0; a--) {
+				Move move = new Move();
+				move.name = "Attack " + random.nextInt(1000);
+				move.cost = new ArrayList<>();
+				for (int c = 1 + random.nextInt(4); c > 0; c--) {
+					move.cost.add(pick(random, TYPES));
+				}
+				move.damage = random.nextInt(4) == 0 ? "" : String.valueOf(10 * (1 + random.nextInt(20))) + (random.nextInt(5) == 0 ? "+" : "");
+				move.text = random.nextInt(3) == 0 ? "" : pick(random, TEXTS);
+				pc.attacks.add(move);
+			}
+			if(random.nextInt(4) == 0){
+				Ability ability = new Ability();
+				ability.type = "Ability";
+				ability.name = "Ability " + random.nextInt(1000);
+				ability.text = pick(random, TEXTS);
+				pc.ability = ability;
+			}
+			WeaknessResistance weakness = new WeaknessResistance();
+			weakness.type = pick(random, TYPES);
+			weakness.value = "×2";
+			pc.weaknesses = Collections.singletonList(weakness);
+			if(random.nextInt(3) == 0){
+				WeaknessResistance resistance = new WeaknessResistance();
+				resistance.type = pick(random, TYPES);
+				resistance.value = "-20";
+				pc.resistances = Collections.singletonList(resistance);
+			}
+			pc.nationalPokedexNumber = 1 + random.nextInt(900);
+		} else if(kind < 17){
+			pc.supertype = "Trainer";
+			pc.subtype = pick(random, TRAINER_SUBTYPES);
+			pc.name = "Synthetic " + pc.subtype + " " + i;
+			pc.text = Arrays.asList(pick(random, TEXTS), pick(random, TEXTS));
+		} else {
+			pc.supertype = "Energy";
+			pc.subtype = "Special";
+			pc.name = "Synthetic Energy " + i;
+			pc.text = Arrays.asList(TEXTS[10], pick(random, TEXTS));
+		}
+		return pc;
+	}
+
+	private static String pick(Random random, String[] values) {
+		return values[random.nextInt(values.length)];
+	}
+
+	static Writer nullWriter() {
+		return new Writer() {
+			@Override
+			public void write(char[] cbuf, int off, int len) {
+			}
+
+			@Override
+			public void write(String str, int off, int len) {
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
+}
@@ -0,0 +1,75 @@
+package net.tcgone.carddb.tools;
+
+import org.apache.commons.lang3.text.WordUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indexed lookups against the linear scans they replaced.
+ * @author axpendix@hotmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CoreCollectionBenchmark {
+
+	private String[] pioCodes;
+	private String[] names;
+
+	@Setup
+	public void setup() {
+		pioCodes = Arrays.stream(CoreCollection.values()).map(CoreCollection::getPioCode).filter(Objects::nonNull).toArray(String[]::new);
+		names = Arrays.stream(CoreCollection.values()).map(CoreCollection::getName).toArray(String[]::new);
+	}
+
+	@Benchmark
+	public void findByPioCode(Blackhole blackhole) {
+		for (String pioCode : pioCodes) {
+			blackhole.consume(CoreCollection.findByPioCode(pioCode));
+		}
+	}
+
+	@Benchmark
+	public void findByPioCodeLinear(Blackhole blackhole) {
+		for (String pioCode : pioCodes) {
+			CoreCollection found = null;
+			for (CoreCollection cc : CoreCollection.values()) {
+				if(pioCode.equals(cc.getPioCode())){
+					found = cc;
+					break;
+				}
+			}
+			blackhole.consume(found);
+		}
+	}
+
+	@Benchmark
+	public void findByName(Blackhole blackhole) {
+		for (String name : names) {
+			blackhole.consume(CoreCollection.findByName(name));
+		}
+	}
+
+	@Benchmark
+	public void findByNameLinear(Blackhole blackhole) {
+		for (String name : names) {
+			CoreCollection found = null;
+			for (CoreCollection cc : CoreCollection.values()) {
+				// display name as getName() used to compute it on every call, full names aside
+				String displayName = WordUtils.capitalizeFully(cc.name(), "_".toCharArray()).replaceAll("_", " ");
+				if(name.equals(displayName) || name.equals(cc.getName())){
+					found = cc;
+					break;
+				}
+			}
+			blackhole.consume(found);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package net.tcgone.carddb.tools;
+
+import net.tcgone.carddb.model.SetFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author axpendix@hotmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImplTmplGeneratorBenchmark {
+
+	@Param({BenchmarkData.FIXTURE, "1000", "100000"})
+	public String cards;
+
+	private final ImplTmplGenerator generator = new ImplTmplGenerator();
+	private Collection<SetFile> setFiles;
+
+	@Setup
+	public void setup() throws Exception {
+		generator.init();
+		SetWriter setWriter = new SetWriter();
+		setFiles = setWriter.prepareSetFiles(new PioReader().load(new ByteArrayInputStream(BenchmarkData.json(cards)))).values();
+		setWriter.prepareReprints(setFiles);
+	}
+
+	@Benchmark
+	public void generateGroovy() {
+		Writer writer = BenchmarkData.nullWriter();
+		for (SetFile setFile : setFiles) {
+			generator.render(generator.buildModel(setFile), writer);
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package net.tcgone.carddb.tools;
+
+import net.tcgone.carddb.model.Card;
+import net.tcgone.carddb.model.Move;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author axpendix@hotmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PioReaderBenchmark {
+
+	@Param({BenchmarkData.FIXTURE, "1000", "100000"})
+	public String cards;
+
+	private byte[] json;
+	private List<String> texts;
+	private final PioReader reader = new PioReader();
+
+	/**
+	 * Freshly parsed cards for every invocation, converting mutates them.
+	 */
+	@State(Scope.Thread)
+	public static class Parsed {
+		PioReader reader;
+		List<PioCard> pioCards;
+
+		@Setup(Level.Invocation)
+		public void parse(PioReaderBenchmark benchmark) throws IOException {
+			reader = new PioReader();
+			pioCards = reader.parse(new ByteArrayInputStream(benchmark.json));
+		}
+	}
+
+	@Setup
+	public void setup() throws IOException {
+		json = BenchmarkData.json(cards);
+		texts = new ArrayList<>();
+		for (PioCard pc : reader.parse(new ByteArrayInputStream(json))) {
+			if(pc.text != null) texts.addAll(pc.text);
+			if(pc.ability != null) texts.add(pc.ability.text);
+			if(pc.attacks != null){
+				for (Move move : pc.attacks) {
+					texts.add(move.text);
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public List<Card> load() throws IOException {
+		return new PioReader().load(new ByteArrayInputStream(json));
+	}
+
+	@Benchmark
+	public void prepareCard(Parsed parsed, Blackhole blackhole) {
+		for (PioCard pc : parsed.pioCards) {
+			blackhole.consume(parsed.reader.prepareCard(pc));
+		}
+	}
+
+	@Benchmark
+	public void replaceTypesWithShortForms(Blackhole blackhole) {
+		for (String text : texts) {
+			blackhole.consume(reader.replaceTypesWithShortForms(text));
+		}
+	}
+}
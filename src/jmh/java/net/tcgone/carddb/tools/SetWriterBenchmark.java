@@ -0,0 +1,64 @@
+package net.tcgone.carddb.tools;
+
+import net.tcgone.carddb.model.Card;
+import net.tcgone.carddb.model.SetFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author axpendix@hotmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SetWriterBenchmark {
+
+	@Param({BenchmarkData.FIXTURE, "1000", "100000"})
+	public String cards;
+
+	private final SetWriter setWriter = new SetWriter();
+	private List<Card> cardList;
+	private Collection<SetFile> setFiles;
+	private List<SetFile> writableSetFiles;
+
+	@Setup
+	public void setup() throws IOException {
+		setWriter.init();
+		byte[] json = BenchmarkData.json(cards);
+		cardList = new PioReader().load(new ByteArrayInputStream(json));
+		setFiles = setWriter.prepareSetFiles(cardList).values();
+		// yaml is written from normalized copies of reprint resolved cards, as writeAll does
+		writableSetFiles = new ArrayList<>(setWriter.prepareSetFiles(new PioReader().load(new ByteArrayInputStream(json))).values());
+		setWriter.prepareReprints(writableSetFiles);
+		writableSetFiles.replaceAll(SetWriter::normalize);
+	}
+
+	@Benchmark
+	public Map<String, SetFile> prepareSetFiles() {
+		return setWriter.prepareSetFiles(cardList);
+	}
+
+	@Benchmark
+	public void prepareReprints() {
+		setWriter.prepareReprints(setFiles);
+	}
+
+	@Benchmark
+	public void writeYaml() throws IOException {
+		Writer writer = BenchmarkData.nullWriter();
+		for (SetFile setFile : writableSetFiles) {
+			setWriter.write(setFile, writer);
+		}
+	}
+}
@@ -26,9 +26,14 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
 import java.io.FileInputStream;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author axpendix@hotmail.com
@@ -37,6 +42,7 @@ import java.util.Map;
 public class Application implements ApplicationRunner {
 
 	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(Application.class);
+	private static final long WATCH_DEBOUNCE_MILLIS = 300;
 	private final ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
 
 	public static void main(String[] args) {
@@ -53,6 +59,10 @@ public class Application implements ApplicationRunner {
 	private ScanDownloader scanDownloader;
 	@Autowired
 	private ImplTmplGenerator implTmplGenerator;
+	@Autowired
+	private PipelineMetrics metrics;
+	@Autowired
+	private ValuePool valuePool;
 
 	@Override
 	public void run(ApplicationArguments args) throws Exception {
@@ -69,37 +79,422 @@ public class Application implements ApplicationRunner {
 			printUsage();
 			return;
 		}
-		List<Card> allCards=new ArrayList<>();
-		if(pios!=null){
-			for (String filename : pios) {
-				log.info("Reading {}", filename);
-				allCards.addAll(pioReader.load(new FileInputStream(filename)));
+		if(pios==null) pios=Collections.emptyList();
+		if(yamls==null) yamls=Collections.emptyList();
+		Options options = new Options();
+		options.exportYaml = exportYaml;
+		options.exportImplTmpl = exportImplTmpl;
+		options.downloadScans = downloadScans;
+		options.parallelism = parseParallelism(args);
+		if(options.parallelism<1){
+			System.out.println("--parallelism must be a number of at least 1.\n");
+			printUsage();
+			return;
+		}
+		long cacheSize = parseCacheSize(args);
+		if(cacheSize<1){
+			System.out.println("--cache-size must be a number of megabytes, at least 1.\n");
+			printUsage();
+			return;
+		}
+		if(args.containsOption("reprint-index")){
+			List<String> values = args.getOptionValues("reprint-index");
+			options.reprintIndexFile = Paths.get(values.isEmpty() ? "output/reprints.idx" : values.get(0));
+		}
+		if(args.containsOption("metrics-report")){
+			List<String> values = args.getOptionValues("metrics-report");
+			options.metricsReport = Paths.get(values.isEmpty() ? "output/metrics.json" : values.get(0));
+		}
+		options.cache = openCache(args, cacheSize);
+		Inputs inputs = process(pios, yamls, options);
+		if(args.containsOption("watch")){
+			if(pios.isEmpty()){
+				log.warn("Nothing to watch, only --pio files are watched");
+				return;
+			}
+			// scans do not change with card text edits, and revalidating them would dominate the latency
+			options.downloadScans = false;
+			watch(inputs, options);
+		}
+	}
+
+	// run options shared by the initial run and watch mode reruns
+	static class Options {
+		boolean exportYaml;
+		boolean exportImplTmpl;
+		boolean downloadScans;
+		int parallelism;
+		Path reprintIndexFile;
+		// opened by the first export, watch mode reruns keep using it
+		ReprintIndex reprintIndex;
+		Path metricsReport;
+		BuildCache cache;
+	}
+
+	/**
+	 * Loads the given files, then runs the enabled exporters over the sets they contain.
+	 * @return the loaded cards, for watch mode to rerun on
+	 */
+	Inputs process(List<String> pioFiles, List<String> yamlFiles, Options options) throws Exception {
+		int parallelism = options.parallelism;
+		BuildCache cache = options.cache;
+		Inputs inputs = new Inputs(pioFiles);
+		metrics.start();
+		try {
+			metrics.run("read", () -> {
+				if(parallelism>1){
+					readAllConcurrently(pioFiles, yamlFiles, parallelism, inputs, cache);
+				} else {
+					for (String filename : pioFiles) {
+						PioInput input = scanPio(filename, cache, false);
+						inputs.put(filename, readPio(filename, input, cache), input.stage1Names);
+					}
+					for (String filename : yamlFiles) {
+						inputs.put(filename, readYaml(filename).cards, null);
+					}
+				}
+				for (String filename : pioFiles) metrics.bytesRead("read", Files.size(Paths.get(filename)));
+				for (String filename : yamlFiles) metrics.bytesRead("read", Files.size(Paths.get(filename)));
+				metrics.cards("read", inputs.size());
+				valuePool.logSummary();
+				if(cache!=null){
+					cache.logSummary();
+				}
+			});
+			export(inputs, null, options);
+		} finally {
+			reportMetrics(options);
+		}
+		return inputs;
+	}
+
+	/**
+	 * Converts a changed pio file again, then exports the sets whose output may differ from a full run: those of
+	 * the file, and those whose reprints resolve differently now. If the stage 1 names the file adds have changed,
+	 * all pio files after it are converted again too.
+	 */
+	void reprocess(Inputs inputs, String filename, Options options) throws Exception {
+		BuildCache cache = options.cache;
+		metrics.start();
+		try {
+			Set<String> changedSets = metrics.time("read", () -> {
+				Set<String> sets = new HashSet<>();
+				int index = inputs.pioFiles.indexOf(filename);
+				pioReader.resetStage1Names(inputs.stage1NamesBefore(index));
+				boolean stage1NamesChanged = false;
+				int cards = 0;
+				for (int i = index; i < inputs.pioFiles.size() && (i == index || stage1NamesChanged); i++) {
+					String file = inputs.pioFiles.get(i);
+					PioInput input = scanPio(file, cache, false);
+					List<Card> converted = readPio(file, input, cache);
+					stage1NamesChanged |= !input.stage1Names.equals(inputs.stage1Names.get(file));
+					sets.addAll(inputs.put(file, converted, input.stage1Names));
+					metrics.bytesRead("read", Files.size(Paths.get(file)));
+					cards += converted.size();
+				}
+				metrics.cards("read", cards);
+				return sets;
+			});
+			export(inputs, changedSets, options);
+		} finally {
+			reportMetrics(options);
+		}
+	}
+
+	/**
+	 * Prepares all loaded sets and resolves their reprints, then runs the enabled exporters.
+	 * @param changedSets enum ids of the sets to export, reprint changes add to them. null to export all sets
+	 */
+	private void export(Inputs inputs, Set<String> changedSets, Options options) throws Exception {
+		int parallelism = options.parallelism;
+		List<Card> allCards = inputs.restore();
+		Map<String, SetFile> setFileMap = metrics.time("prepare", () -> setWriter.prepareSetFiles(allCards));
+		metrics.cards("prepare", allCards.size());
+		ReprintIndex reprintIndex = metrics.time("reprints", () -> {
+			if(options.reprintIndexFile!=null && options.reprintIndex==null){
+				options.reprintIndex = ReprintIndex.open(options.reprintIndexFile, Paths.get("output"));
+			}
+			setWriter.prepareReprints(setFileMap.values(), options.reprintIndex);
+			return options.reprintIndex;
+		});
+		metrics.cards("reprints", allCards.size());
+		Set<String> reprintChanges = inputs.updateReprints(allCards);
+		List<SetFile> setFiles = new ArrayList<>();
+		List<Card> cards = new ArrayList<>();
+		setFileMap.forEach((enumId, setFile) -> {
+			if(changedSets == null || changedSets.contains(enumId) || reprintChanges.contains(enumId)){
+				setFiles.add(setFile);
+				cards.addAll(setFile.cards);
+			}
+		});
+		if(options.downloadScans){
+			int failures = metrics.time("scans", () -> scanDownloader.downloadAll(cards, parallelism));
+			metrics.cards("scans", cards.size());
+			metrics.errors("scans", failures);
+			log.info("Scans have been saved into ./scans folder");
+		}
+		if(options.exportYaml){
+			metrics.run("yaml", () -> {
+				OutputTracker tracker = setWriter.writeAll(setFiles, parallelism);
+				metrics.bytesWritten("yaml", tracker.getBytesWritten());
+				log.info("YAMLs have been written to ./output folder");
+				if(reprintIndex!=null){
+					reprintIndex.addAll(setFiles);
+				}
+			});
+			metrics.cards("yaml", cards.size());
+		}
+		if(options.exportImplTmpl){
+			metrics.run("impl", () -> {
+				OutputTracker tracker = implTmplGenerator.writeAll(setFiles, parallelism);
+				metrics.bytesWritten("impl", tracker.getBytesWritten());
+				log.info("Impl Tmpls have been written to ./impl folder");
+			});
+			metrics.cards("impl", cards.size());
+		}
+	}
+
+	private void reportMetrics(Options options) {
+		metrics.printSummary();
+		if(options.metricsReport!=null){
+			try {
+				metrics.writeReport(options.metricsReport);
+			} catch (IOException e) {
+				log.warn("Cannot write metrics report", e);
+			}
+		}
+	}
+
+	/**
+	 * Watches the pio files and processes each changed file again, until interrupted. Events are debounced so a
+	 * burst of writes (editors often truncate, write and rename) triggers one run per file. All loaded cards are
+	 * kept, so reruns resolve reprints and stage 1 names exactly like a full run would.
+	 */
+	private void watch(Inputs inputs, Options options) throws Exception {
+		Map<Path, String> files = new HashMap<>();
+		try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+			Set<Path> dirs = new HashSet<>();
+			for (String filename : inputs.pioFiles) {
+				Path path = Paths.get(filename).toAbsolutePath().normalize();
+				files.put(path, filename);
+				if(dirs.add(path.getParent())){
+					path.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+				}
+			}
+			log.info("Watching {} files for changes, press Ctrl+C to stop", files.size());
+			while (true) {
+				Set<String> changed = new LinkedHashSet<>();
+				WatchKey key = watchService.take();
+				do {
+					collectChanges(key, files, changed);
+				} while ((key = watchService.poll(WATCH_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+				for (String filename : changed) {
+					log.info("{} has changed", filename);
+					try {
+						reprocess(inputs, filename, options);
+					} catch (Exception e) {
+						// most likely a half written or malformed file, the next save triggers another run
+						log.error("Cannot process {}", filename, e);
+					}
+				}
+			}
+		}
+	}
+
+	private void collectChanges(WatchKey key, Map<Path, String> files, Set<String> changed) {
+		Path dir = (Path) key.watchable();
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if(event.kind() == StandardWatchEventKinds.OVERFLOW){
+				files.forEach((path, filename) -> {
+					if(path.getParent().equals(dir)) changed.add(filename);
+				});
+			} else {
+				String filename = files.get(dir.resolve((Path) event.context()));
+				if(filename != null) changed.add(filename);
 			}
 		}
-		if(yamls!=null){
+		key.reset();
+	}
+
+	// 0 for a missing value or anything but a number
+	private int parseParallelism(ApplicationArguments args) {
+		if(!args.containsOption("parallelism")){
+			return 1;
+		}
+		List<String> values = args.getOptionValues("parallelism");
+		try {
+			return values.isEmpty() ? 0 : Integer.parseInt(values.get(0));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	// megabytes, 0 for a missing value, anything but a number or more than fits in bytes
+	private long parseCacheSize(ApplicationArguments args) {
+		if(!args.containsOption("cache-size")){
+			return 512;
+		}
+		List<String> values = args.getOptionValues("cache-size");
+		try {
+			long megabytes = values.isEmpty() ? 0 : Long.parseLong(values.get(0));
+			return megabytes > Long.MAX_VALUE / (1024 * 1024) ? 0 : megabytes;
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private BuildCache openCache(ApplicationArguments args, long maxMegabytes) throws IOException {
+		if(!args.containsOption("cache-dir")){
+			return null;
+		}
+		if(!BuildCache.isSupported()){
+			log.warn("Card model has fields the build cache does not know of, caching is disabled");
+			return null;
+		}
+		List<String> values = args.getOptionValues("cache-dir");
+		return new BuildCache(Paths.get(values.isEmpty() ? "output/cache" : values.get(0)), maxMegabytes * 1024 * 1024);
+	}
+
+	/**
+	 * Parses all input files on a bounded pool, then merges the results in argument order (pios first, then yamls)
+	 * so the outcome is identical to the sequential run. Pio cards are converted on the calling thread, in order.
+	 * At most parallelism pio files are parsed ahead of conversion: the next one is only submitted once one has been
+	 * converted, so memory stays bounded however many files are given. Files are read concurrently with each other
+	 * only, a single input file gains nothing.
+	 */
+	private void readAllConcurrently(List<String> pios, List<String> yamls, int parallelism, Inputs inputs, BuildCache cache) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			List<Future<PioInput>> pioFutures = new ArrayList<>();
+			for (int i = 0; i < Math.min(parallelism, pios.size()); i++) {
+				String filename = pios.get(i);
+				pioFutures.add(executor.submit(() -> scanPio(filename, cache, true)));
+			}
+			List<Future<SetFile>> yamlFutures = new ArrayList<>();
 			for (String filename : yamls) {
-				log.info("Reading {}", filename);
-				SetFile setFile = mapper.readValue(new FileInputStream(filename), SetFile.class);
-				for (Card card : setFile.cards) {
-					card.set = setFile.set; // temporary
+				yamlFutures.add(executor.submit(() -> readYaml(filename)));
+			}
+			for (int i = 0; i < pios.size(); i++) {
+				PioInput input = await(pioFutures.get(i));
+				pioFutures.set(i, null);
+				inputs.put(pios.get(i), readPio(pios.get(i), input, cache), input.stage1Names);
+				if(i + parallelism < pios.size()){
+					String next = pios.get(i + parallelism);
+					pioFutures.add(executor.submit(() -> scanPio(next, cache, true)));
 				}
-				allCards.addAll(setFile.cards);
 			}
+			for (int i = 0; i < yamls.size(); i++) {
+				inputs.put(yamls.get(i), await(yamlFutures.get(i)).cards, null);
+			}
+		} finally {
+			executor.shutdownNow();
 		}
-		Map<String, SetFile> setFileMap = setWriter.prepareSetFiles(allCards);
-		setWriter.prepareReprints(setFileMap.values());
-		if(downloadScans){
-			scanDownloader.downloadAll(allCards);
-			log.info("Scans have been saved into ./scans folder");
+	}
+
+	private <T> T await(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof Exception){
+				throw (Exception) e.getCause();
+			}
+			throw e;
 		}
-		if(exportYaml){
-			setWriter.writeAll(setFileMap.values());
-			log.info("YAMLs have been written to ./output folder");
+	}
+
+	// a pio file hashed and possibly parsed ahead of conversion, and the stage 1 names it added once converted
+	static class PioInput {
+		String contentHash;
+		List<PioCard> pioCards;
+		Set<String> stage1Names;
+	}
+
+	/**
+	 * Hashes the file for the cache, and parses it when eager unless its content is cached already (whether the
+	 * entry matches can only be told once all files before it have been converted).
+	 */
+	PioInput scanPio(String filename, BuildCache cache, boolean eager) throws IOException {
+		PioInput input = new PioInput();
+		if(cache!=null){
+			input.contentHash = cache.contentHash(Paths.get(filename));
+			if(cache.mayContain(input.contentHash)){
+				return input;
+			}
+		}
+		if(eager){
+			input.pioCards = parsePio(filename);
+		}
+		return input;
+	}
+
+	/**
+	 * Converts the file, or serves it from the cache when it was converted with the same stage 1 names before.
+	 * Files not parsed ahead are streamed, so only the converted cards are held in memory.
+	 * Must be called in argument order, conversion depends on the stage 1 names of earlier files.
+	 */
+	List<Card> readPio(String filename, PioInput input, BuildCache cache) throws IOException {
+		String key = null;
+		if(cache!=null){
+			key = cache.key(input.contentHash, pioReader.getStage1Names());
+			BuildCache.Entry entry = cache.get(key);
+			if(entry!=null){
+				log.info("Reading {} (cached)", filename);
+				pioReader.addStage1Names(entry.stage1Names);
+				input.stage1Names = new HashSet<>(entry.stage1Names);
+				for (Card card : entry.cards) {
+					valuePool.intern(card);
+				}
+				return entry.cards;
+			}
+		}
+		Set<String> stage1Names = pioReader.getStage1Names();
+		List<Card> cards;
+		if(input.pioCards != null){
+			cards = pioReader.convert(input.pioCards);
+		} else {
+			log.info("Reading {}", filename);
+			cards = new ArrayList<>();
+			try (FileInputStream in = new FileInputStream(filename)) {
+				pioReader.iterate(in).forEachRemaining(cards::add);
+			}
+		}
+		input.stage1Names = pioReader.getStage1Names();
+		input.stage1Names.removeAll(stage1Names);
+		if(cache!=null){
+			try {
+				cache.put(key, cards, input.stage1Names);
+			} catch (IOException e) {
+				log.warn("Cannot cache {}", filename, e);
+			}
+		}
+		return cards;
+	}
+
+	private List<PioCard> parsePio(String filename) throws IOException {
+		log.info("Reading {}", filename);
+		try (FileInputStream in = new FileInputStream(filename)) {
+			return pioReader.parse(in);
+		}
+	}
+
+	/**
+	 * Reads the set snapshot written along with the yaml file when it is up to date, otherwise the yaml itself.
+	 */
+	private SetFile readYaml(String filename) throws IOException {
+		SetFile setFile = SetSnapshot.readIfFresh(Paths.get(filename));
+		if(setFile != null){
+			log.info("Reading {} (snapshot)", filename);
+		} else {
+			log.info("Reading {}", filename);
+			try (FileInputStream in = new FileInputStream(filename)) {
+				setFile = mapper.readValue(in, SetFile.class);
+			}
 		}
-		if(exportImplTmpl){
-			implTmplGenerator.writeAll(setFileMap.values());
-			log.info("Impl Tmpls have been written to ./impl folder");
+		for (Card card : setFile.cards) {
+			card.set = setFile.set; // temporary
+			valuePool.intern(card);
 		}
+		return setFile;
 	}
 
 	private void printUsage() {
@@ -111,6 +506,16 @@ public class Application implements ApplicationRunner {
 				"then, export to yaml or impl-tmpl;\n" +
 				"\t--export-yaml --export-impl-tmpl\n" +
 				"and/or download scans;\n" +
-				"\t--download-scans");
+				"\t--download-scans\n" +
+				"optionally, read input files, download scans and export concurrently (reading a single input file gains nothing);\n" +
+				"\t--parallelism=4\n" +
+				"optionally, resolve reprints against the whole database through a persistent index (built from ./output on first use);\n" +
+				"\t--reprint-index or --reprint-index=output/reprints.idx\n" +
+				"optionally, write per stage timings, throughput and allocation as json (a summary table is always logged);\n" +
+				"\t--metrics-report or --metrics-report=output/metrics.json\n" +
+				"optionally, skip converting pio/kirby files that have not changed since an earlier run (least recently used entries are dropped beyond --cache-size megabytes, 512 by default);\n" +
+				"\t--cache-dir or --cache-dir=output/cache --cache-size=512\n" +
+				"optionally, keep running and export the sets of pio/kirby files again whenever they change (scans are not downloaded again);\n" +
+				"\t--watch");
 	}
 }
@@ -0,0 +1,206 @@
+package net.tcgone.carddb.tools;
+
+import net.tcgone.carddb.model.Card;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Local cache of converted pio/kirby input files, so unchanged inputs skip parsing and conversion.
+ * <p>
+ * Entries are keyed by the sha-256 of the input file and the tool build, plus the stage 1 names known when the
+ * file was converted (evolution stages of old ex cards depend on them). An entry holds the cards, encoded with the
+ * {@link SetSnapshot} codec, and the stage 1 names the file added. Reading an entry marks it as recently used; once
+ * the cache grows beyond its size limit, least recently used entries are deleted. Thread safe.
+ * @author axpendix@hotmail.com
+ */
+public class BuildCache {
+
+	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(BuildCache.class);
+
+	private static final int MAGIC = 0x43444243; // CDBC
+	private static final int VERSION = 1;
+	private static final String EXTENSION = ".cards";
+
+	public static class Entry {
+		public final List<Card> cards;
+		public final List<String> stage1Names;
+
+		Entry(List<Card> cards, List<String> stage1Names) {
+			this.cards = cards;
+			this.stage1Names = stage1Names;
+		}
+	}
+
+	private final Path dir;
+	private final long maxBytes;
+	private final String toolVersion = toolVersion();
+	private final AtomicInteger hits = new AtomicInteger();
+	private final AtomicInteger misses = new AtomicInteger();
+
+	public BuildCache(Path dir, long maxBytes) throws IOException {
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+		Files.createDirectories(dir);
+	}
+
+	/**
+	 * Cards cannot be cached if the model has fields the snapshot codec does not know of.
+	 */
+	public static boolean isSupported() {
+		return SetSnapshot.isSupported();
+	}
+
+	/**
+	 * @return hash of the content of input and of the tool build, first part of its entry keys
+	 */
+	public String contentHash(Path input) throws IOException {
+		MessageDigest digest = Digests.sha256();
+		digest.update(toolVersion.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		try (InputStream in = new DigestInputStream(new BufferedInputStream(Files.newInputStream(input)), digest)) {
+			byte[] buffer = new byte[8192];
+			while (in.read(buffer) >= 0) {
+				// digest only
+			}
+		}
+		return Digests.hex(digest.digest());
+	}
+
+	public String key(String contentHash, Collection<String> stage1Names) {
+		MessageDigest digest = Digests.sha256();
+		for (String name : new TreeSet<>(stage1Names)) {
+			digest.update(name.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+		}
+		return contentHash + "-" + Digests.hex(digest.digest()).substring(0, 16);
+	}
+
+	/**
+	 * Cheap check whether the content has been cached at all, whatever the stage 1 names were.
+	 */
+	public boolean mayContain(String contentHash) throws IOException {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, contentHash + "-*" + EXTENSION)) {
+			return stream.iterator().hasNext();
+		}
+	}
+
+	/**
+	 * @return cached entry, or null
+	 */
+	public Entry get(String key) throws IOException {
+		Path path = dir.resolve(key + EXTENSION);
+		if(!Files.exists(path)){
+			misses.incrementAndGet();
+			return null;
+		}
+		try {
+			// read to the heap rather than mapped, so corrupt and evicted entries can be deleted on any platform
+			ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+			if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION){
+				throw new IllegalArgumentException("not a cache entry");
+			}
+			SetSnapshot.Decoder decoder = new SetSnapshot.Decoder(buffer);
+			List<String> stage1Names = decoder.strings();
+			List<Card> cards = decoder.cards();
+			Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+			hits.incrementAndGet();
+			return new Entry(cards, stage1Names);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException e) {
+			log.warn("Deleting corrupt cache entry {}", path);
+			Files.deleteIfExists(path);
+			misses.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Stores freshly converted cards, before anything else modified them.
+	 * @param stage1Names stage 1 names added while converting them
+	 */
+	public void put(String key, List<Card> cards, Collection<String> stage1Names) throws IOException {
+		SetSnapshot.Encoder encoder = new SetSnapshot.Encoder();
+		encoder.strings(new ArrayList<>(stage1Names));
+		encoder.cards(cards);
+		Path path = dir.resolve(key + EXTENSION);
+		Path tmp = Files.createTempFile(dir, key, ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				encoder.writeTo(out);
+			}
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+		evict();
+	}
+
+	private synchronized void evict() throws IOException {
+		List<Path> entries;
+		try (Stream<Path> list = Files.list(dir)) {
+			entries = list.filter(p -> p.getFileName().toString().endsWith(EXTENSION)).collect(Collectors.toList());
+		}
+		Map<Path, Long> sizes = new HashMap<>();
+		Map<Path, Long> lastUsed = new HashMap<>();
+		long total = 0;
+		for (Path entry : entries) {
+			try {
+				sizes.put(entry, Files.size(entry));
+				lastUsed.put(entry, Files.getLastModifiedTime(entry).toMillis());
+				total += sizes.get(entry);
+			} catch (NoSuchFileException e) {
+				// evicted concurrently
+			}
+		}
+		if(total <= maxBytes){
+			return;
+		}
+		List<Path> byAge = new ArrayList<>(sizes.keySet());
+		byAge.sort(Comparator.comparing(lastUsed::get));
+		for (Path entry : byAge) {
+			if(total <= maxBytes){
+				break;
+			}
+			Files.deleteIfExists(entry);
+			total -= sizes.get(entry);
+			log.debug("Evicted {}", entry);
+		}
+	}
+
+	public void logSummary() {
+		log.info("Build cache {}: {} hits, {} misses", dir, hits.get(), misses.get());
+	}
+
+	// implementation version plus build time of the jar/classes, so rebuilt snapshots never reuse stale entries
+	private static String toolVersion() {
+		String version = String.valueOf(BuildCache.class.getPackage().getImplementationVersion());
+		try {
+			CodeSource codeSource = BuildCache.class.getProtectionDomain().getCodeSource();
+			if(codeSource != null){
+				Path location = Paths.get(codeSource.getLocation().toURI());
+				if(Files.isRegularFile(location)){
+					version += "/" + Files.getLastModifiedTime(location).toMillis();
+				} else {
+					version += "/" + Files.getLastModifiedTime(location.resolve(BuildCache.class.getName().replace('.', '/') + ".class")).toMillis();
+				}
+			}
+		} catch (IOException | URISyntaxException | IllegalArgumentException | FileSystemNotFoundException e) {
+			log.debug("Cannot tell build time", e);
+		}
+		return version;
+	}
+}
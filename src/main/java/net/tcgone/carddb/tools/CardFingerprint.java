@@ -0,0 +1,135 @@
+package net.tcgone.carddb.tools;
+
+import net.tcgone.carddb.model.Ability;
+import net.tcgone.carddb.model.Card;
+import net.tcgone.carddb.model.Move;
+import net.tcgone.carddb.model.WeaknessResistance;
+
+import java.util.List;
+
+/**
+ * 64 bit content fingerprint over the fields {@link EqualityCard} compares, so equal cards always have equal
+ * fingerprints. Moves are encoded the way {@link SetWriter} writes them (empty damage/text as absent, a single
+ * null cost as no cost) so that fingerprints of freshly read and yaml loaded cards match.
+ * @author axpendix@hotmail.com
+ */
+public final class CardFingerprint {
+
+	private static final long PRIME = 0x100000001b3L;
+	private static final long OFFSET = 0xcbf29ce484222325L;
+	private static final int NULL = -1;
+
+	private long h = OFFSET;
+
+	private CardFingerprint() {
+	}
+
+	public static long of(Card card) {
+		CardFingerprint f = new CardFingerprint();
+		f.putString(card.name);
+		f.putStrings(card.types);
+		f.putString(card.superType);
+		f.putStrings(card.subTypes);
+		f.putString(card.evolvesFrom);
+		f.putInteger(card.hp);
+		f.putInteger(card.retreatCost);
+		if(card.abilities == null){
+			f.putInt(NULL);
+		} else {
+			f.putInt(card.abilities.size());
+			for (Ability ability : card.abilities) {
+				f.putString(ability.type);
+				f.putString(ability.name);
+				f.putString(ability.text);
+			}
+		}
+		if(card.moves == null){
+			f.putInt(NULL);
+		} else {
+			f.putInt(card.moves.size());
+			for (Move move : card.moves) {
+				f.putString(move.name);
+				if(move.cost != null && move.cost.size() == 1 && move.cost.get(0) == null){
+					f.putInt(0);
+				} else {
+					f.putStrings(move.cost);
+				}
+				f.putString(emptyToNull(move.damage));
+				f.putString(emptyToNull(move.text));
+			}
+		}
+		f.putWeaknessResistances(card.weaknesses);
+		f.putWeaknessResistances(card.resistances);
+		f.putStrings(card.text);
+		if(card.energy == null){
+			f.putInt(NULL);
+		} else {
+			f.putInt(card.energy.size());
+			for (List<String> energy : card.energy) {
+				f.putStrings(energy);
+			}
+		}
+		return mix(f.h);
+	}
+
+	private void putWeaknessResistances(List<WeaknessResistance> list) {
+		if(list == null){
+			putInt(NULL);
+			return;
+		}
+		putInt(list.size());
+		for (WeaknessResistance wr : list) {
+			putString(wr.type);
+			putString(wr.value);
+		}
+	}
+
+	private void putStrings(List<String> list) {
+		if(list == null){
+			putInt(NULL);
+			return;
+		}
+		putInt(list.size());
+		for (String s : list) {
+			putString(s);
+		}
+	}
+
+	private void putString(String s) {
+		if(s == null){
+			putInt(NULL);
+			return;
+		}
+		putInt(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			h = (h ^ s.charAt(i)) * PRIME;
+		}
+	}
+
+	private void putInteger(Integer i) {
+		if(i == null){
+			putInt(NULL);
+		} else {
+			putInt(0);
+			putInt(i);
+		}
+	}
+
+	private void putInt(int i) {
+		h = (h ^ i) * PRIME;
+	}
+
+	private static String emptyToNull(String s) {
+		return s != null && s.isEmpty() ? null : s;
+	}
+
+	// murmur3 finalizer, spreads fnv's weak high bits
+	private static long mix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+}
@@ -17,7 +17,8 @@ package net.tcgone.carddb.tools;
 
 import org.apache.commons.lang3.text.WordUtils;
 
-import java.util.Objects;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -175,6 +176,22 @@ public enum CoreCollection {
 	private String shortName;
 	private String fullName;
 	private String pioCode;
+	private String displayName;
+
+	private static final Map<Integer, CoreCollection> byId = new HashMap<>();
+	private static final Map<String, CoreCollection> byName = new HashMap<>();
+	private static final Map<String, CoreCollection> byShortName = new HashMap<>();
+	private static final Map<String, CoreCollection> byPioCode = new HashMap<>();
+
+	static {
+		// first declared constant wins on duplicates, same as the former linear scans
+		for (CoreCollection item : values()) {
+			byId.putIfAbsent(item.id, item);
+			byName.putIfAbsent(item.displayName, item);
+			byShortName.putIfAbsent(item.shortName, item);
+			if(item.pioCode != null) byPioCode.putIfAbsent(item.pioCode, item);
+		}
+	}
 
 	CoreCollection(int id, String shortName, String pioCode) {
 		this(id, null, shortName, pioCode);
@@ -185,6 +202,7 @@ public enum CoreCollection {
 		this.fullName = fullName;
 		this.shortName = shortName;
 		this.pioCode = pioCode;
+		this.displayName = fullName==null? WordUtils.capitalizeFully(this.name(), '_').replace('_', ' '):fullName;
 	}
 
 	public String getShortName(){
@@ -192,7 +210,7 @@ public enum CoreCollection {
 	}
 	
 	public String getName(){
-		return fullName==null? WordUtils.capitalizeFully(this.name(), "_".toCharArray()).replaceAll("_", " "):fullName;
+		return displayName;
 	}
 	
 	public int getId() {
@@ -204,31 +222,20 @@ public enum CoreCollection {
 	}
 
 	public static Optional<CoreCollection> findById(int id){
-		for (CoreCollection item : values()) {
-			if(item.id == id) return Optional.of(item);
-		}
-		return Optional.empty();
+		return Optional.ofNullable(byId.get(id));
 	}
 
 	public static Optional<CoreCollection> findByName(String name){
-		for(CoreCollection item : values()){
-			if(Objects.equals(item.getName(), name)) return Optional.of(item);
-		}
-		return Optional.empty();
+		return Optional.ofNullable(byName.get(name));
 	}
 
 	public static Optional<CoreCollection> findByShortName(String shortName){
-		for(CoreCollection item : values()){
-			if(Objects.equals(item.shortName, shortName)) return Optional.of(item);
-		}
-		return Optional.empty();
+		return Optional.ofNullable(byShortName.get(shortName));
 	}
 
 	public static Optional<CoreCollection> findByPioCode(String pioCode){
-		for(CoreCollection item : values()){
-			if(item.pioCode != null && Objects.equals(item.pioCode, pioCode)) return Optional.of(item);
-		}
-		return Optional.empty();
+		if(pioCode == null) return Optional.empty();
+		return Optional.ofNullable(byPioCode.get(pioCode));
 	}
 
 }
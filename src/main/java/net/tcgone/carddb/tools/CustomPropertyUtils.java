@@ -23,20 +23,39 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.yaml.snakeyaml.error.YAMLException;
 import org.yaml.snakeyaml.introspector.*;
 import org.yaml.snakeyaml.util.PlatformFeatureDetector;
 
+/**
+ * PropertyUtils with lock free, thread safe metadata caches, so one instance can be shared by representers
+ * running on different threads. Settings and the caches depending on them live in one immutable snapshot which
+ * the setters replace, lookups running concurrently keep using the snapshot they started with.
+ */
 public class CustomPropertyUtils extends PropertyUtils {
 
-    private final Map<Class<?>, Map<String, Property>> propertiesCache = new HashMap<Class<?>, Map<String, Property>>();
-    private final Map<Class<?>, Set<Property>> readableProperties = new HashMap<Class<?>, Set<Property>>();
-    private BeanAccess beanAccess = BeanAccess.DEFAULT;
-    private boolean allowReadOnlyProperties = false;
-    private boolean skipMissingProperties = false;
+    private static final class Caches {
+        final BeanAccess beanAccess;
+        final boolean allowReadOnlyProperties;
+        final boolean skipMissingProperties;
+        final ConcurrentMap<Class<?>, Map<String, Property>> propertiesCache;
+        final ConcurrentMap<Class<?>, Set<Property>> readableProperties = new ConcurrentHashMap<>();
 
-    private PlatformFeatureDetector platformFeatureDetector;
+        Caches(BeanAccess beanAccess, boolean allowReadOnlyProperties, boolean skipMissingProperties,
+               ConcurrentMap<Class<?>, Map<String, Property>> propertiesCache) {
+            this.beanAccess = beanAccess;
+            this.allowReadOnlyProperties = allowReadOnlyProperties;
+            this.skipMissingProperties = skipMissingProperties;
+            this.propertiesCache = propertiesCache;
+        }
+    }
+
+    private volatile Caches caches;
+
+    private final PlatformFeatureDetector platformFeatureDetector;
 
     public CustomPropertyUtils() {
         this(new PlatformFeatureDetector());
@@ -49,16 +68,15 @@ public class CustomPropertyUtils extends PropertyUtils {
          * Android lacks much of java.beans (including the Introspector class, used here), because java.beans classes tend to rely on java.awt, which isn't
          * supported in the Android SDK. That means we have to fall back on FIELD access only when SnakeYAML is running on the Android Runtime.
          */
-        if (platformFeatureDetector.isRunningOnAndroid()) {
-            beanAccess = BeanAccess.FIELD;
-        }
+        BeanAccess beanAccess = platformFeatureDetector.isRunningOnAndroid() ? BeanAccess.FIELD : BeanAccess.DEFAULT;
+        caches = new Caches(beanAccess, false, false, new ConcurrentHashMap<>());
     }
 
     protected Map<String, Property> getPropertiesMap(Class<?> type, BeanAccess bAccess) {
-        if (propertiesCache.containsKey(type)) {
-            return propertiesCache.get(type);
-        }
+        return caches.propertiesCache.computeIfAbsent(type, t -> createPropertiesMap(t, bAccess));
+    }
 
+    private Map<String, Property> createPropertiesMap(Class<?> type, BeanAccess bAccess) {
         Map<String, Property> properties = new LinkedHashMap<String, Property>();
         boolean inaccessableFieldsExist = false;
         switch (bAccess) {
@@ -106,9 +124,7 @@ public class CustomPropertyUtils extends PropertyUtils {
         if (properties.isEmpty() && inaccessableFieldsExist) {
             throw new YAMLException("No JavaBean properties found in " + type.getName());
         }
-        System.out.println(properties);
-        propertiesCache.put(type, properties);
-        return properties;
+        return Collections.unmodifiableMap(properties);
     }
 
     private static final String TRANSIENT = "transient";
@@ -118,37 +134,37 @@ public class CustomPropertyUtils extends PropertyUtils {
     }
 
     public Set<Property> getProperties(Class<? extends Object> type) {
-        return getProperties(type, beanAccess);
+        return getProperties(type, caches.beanAccess);
     }
 
     public Set<Property> getProperties(Class<? extends Object> type, BeanAccess bAccess) {
-        if (readableProperties.containsKey(type)) {
-            return readableProperties.get(type);
-        }
-        Set<Property> properties = createPropertySet(type, bAccess);
-        readableProperties.put(type, properties);
-        return properties;
+        Caches current = caches;
+        return current.readableProperties.computeIfAbsent(type, t -> createPropertySet(t, bAccess, current));
     }
 
     protected Set<Property> createPropertySet(Class<? extends Object> type, BeanAccess bAccess) {
+        return createPropertySet(type, bAccess, caches);
+    }
+
+    private Set<Property> createPropertySet(Class<? extends Object> type, BeanAccess bAccess, Caches current) {
         Set<Property> properties = new LinkedHashSet<>();
-        Collection<Property> props = getPropertiesMap(type, bAccess).values();
+        Collection<Property> props = current.propertiesCache.computeIfAbsent(type, t -> createPropertiesMap(t, bAccess)).values();
         for (Property property : props) {
-            if (property.isReadable() && (allowReadOnlyProperties || property.isWritable())) {
+            if (property.isReadable() && (current.allowReadOnlyProperties || property.isWritable())) {
                 properties.add(property);
             }
         }
-        return properties;
+        return Collections.unmodifiableSet(properties);
     }
 
     public Property getProperty(Class<? extends Object> type, String name) {
-        return getProperty(type, name, beanAccess);
+        return getProperty(type, name, caches.beanAccess);
     }
 
     public Property getProperty(Class<? extends Object> type, String name, BeanAccess bAccess) {
         Map<String, Property> properties = getPropertiesMap(type, bAccess);
         Property property = properties.get(name);
-        if (property == null && skipMissingProperties) {
+        if (property == null && caches.skipMissingProperties) {
             property = new MissingProperty(name);
         }
         if (property == null) {
@@ -158,28 +174,30 @@ public class CustomPropertyUtils extends PropertyUtils {
         return property;
     }
 
-    public void setBeanAccess(BeanAccess beanAccess) {
+    public synchronized void setBeanAccess(BeanAccess beanAccess) {
         if (platformFeatureDetector.isRunningOnAndroid() && beanAccess != BeanAccess.FIELD) {
             throw new IllegalArgumentException(
                     "JVM is Android - only BeanAccess.FIELD is available");
         }
 
-        if (this.beanAccess != beanAccess) {
-            this.beanAccess = beanAccess;
-            propertiesCache.clear();
-            readableProperties.clear();
+        Caches current = caches;
+        if (current.beanAccess != beanAccess) {
+            caches = new Caches(beanAccess, current.allowReadOnlyProperties, current.skipMissingProperties,
+                    new ConcurrentHashMap<>());
         }
     }
 
-    public void setAllowReadOnlyProperties(boolean allowReadOnlyProperties) {
-        if (this.allowReadOnlyProperties != allowReadOnlyProperties) {
-            this.allowReadOnlyProperties = allowReadOnlyProperties;
-            readableProperties.clear();
+    public synchronized void setAllowReadOnlyProperties(boolean allowReadOnlyProperties) {
+        Caches current = caches;
+        if (current.allowReadOnlyProperties != allowReadOnlyProperties) {
+            // property metadata does not depend on it, only the readable sets are rebuilt
+            caches = new Caches(current.beanAccess, allowReadOnlyProperties, current.skipMissingProperties,
+                    current.propertiesCache);
         }
     }
 
     public boolean isAllowReadOnlyProperties() {
-        return allowReadOnlyProperties;
+        return caches.allowReadOnlyProperties;
     }
 
     /**
@@ -189,14 +207,15 @@ public class CustomPropertyUtils extends PropertyUtils {
      * @param skipMissingProperties
      *            true if missing properties should be skipped, false otherwise.
      */
-    public void setSkipMissingProperties(boolean skipMissingProperties) {
-        if (this.skipMissingProperties != skipMissingProperties) {
-            this.skipMissingProperties = skipMissingProperties;
-            readableProperties.clear();
+    public synchronized void setSkipMissingProperties(boolean skipMissingProperties) {
+        Caches current = caches;
+        if (current.skipMissingProperties != skipMissingProperties) {
+            caches = new Caches(current.beanAccess, current.allowReadOnlyProperties, skipMissingProperties,
+                    current.propertiesCache);
         }
     }
 
     public boolean isSkipMissingProperties() {
-        return skipMissingProperties;
+        return caches.skipMissingProperties;
     }
 }
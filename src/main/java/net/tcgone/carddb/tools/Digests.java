@@ -0,0 +1,48 @@
+package net.tcgone.carddb.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * @author axpendix@hotmail.com
+ */
+public final class Digests {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private Digests() {
+	}
+
+	public static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static byte[] sha256(Path file) throws IOException {
+		MessageDigest digest = sha256();
+		try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+			byte[] buffer = new byte[8192];
+			while (in.read(buffer) >= 0) {
+				// digest only
+			}
+		}
+		return digest.digest();
+	}
+
+	public static String hex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+			chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+}
@@ -30,20 +30,26 @@ public class EqualityCard extends Card {
 	public boolean equals(Object o) {
 		if (this == o) return true;
 		if (o == null || getClass() != o.getClass()) return false;
-		EqualityCard card = (EqualityCard) o;
-		return Objects.equals(name, card.name) &&
-				Objects.equals(types, card.types) &&
-				Objects.equals(superType, card.superType) &&
-				Objects.equals(subTypes, card.subTypes) &&
-				Objects.equals(evolvesFrom, card.evolvesFrom) &&
-				Objects.equals(hp, card.hp) &&
-				Objects.equals(retreatCost, card.retreatCost) &&
-				Objects.equals(abilities, card.abilities) &&
-				Objects.equals(moves, card.moves) &&
-				Objects.equals(weaknesses, card.weaknesses) &&
-				Objects.equals(resistances, card.resistances) &&
-				Objects.equals(text, card.text) &&
-				Objects.equals(energy, card.energy);
+		return sameContent(this, (EqualityCard) o);
+	}
+
+	/**
+	 * Deep content comparison used to confirm {@link CardFingerprint} matches, without wrapping cards.
+	 */
+	public static boolean sameContent(Card c1, Card c2) {
+		return Objects.equals(c1.name, c2.name) &&
+				Objects.equals(c1.types, c2.types) &&
+				Objects.equals(c1.superType, c2.superType) &&
+				Objects.equals(c1.subTypes, c2.subTypes) &&
+				Objects.equals(c1.evolvesFrom, c2.evolvesFrom) &&
+				Objects.equals(c1.hp, c2.hp) &&
+				Objects.equals(c1.retreatCost, c2.retreatCost) &&
+				Objects.equals(c1.abilities, c2.abilities) &&
+				Objects.equals(c1.moves, c2.moves) &&
+				Objects.equals(c1.weaknesses, c2.weaknesses) &&
+				Objects.equals(c1.resistances, c2.resistances) &&
+				Objects.equals(c1.text, c2.text) &&
+				Objects.equals(c1.energy, c2.energy);
 	}
 
 	@Override
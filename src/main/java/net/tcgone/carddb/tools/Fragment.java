@@ -0,0 +1,43 @@
+package net.tcgone.carddb.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A String.format style template with only %s placeholders, split once up front and appended straight into a
+ * builder. Output is identical to String.format for %s (null becomes "null"). Immutable, thread safe.
+ * @author axpendix@hotmail.com
+ */
+public final class Fragment {
+
+	private final String[] parts;
+
+	public Fragment(String format) {
+		List<String> list = new ArrayList<>();
+		int from = 0;
+		int index;
+		while ((index = format.indexOf("%s", from)) >= 0) {
+			list.add(format.substring(from, index));
+			from = index + 2;
+		}
+		list.add(format.substring(from));
+		parts = list.toArray(new String[0]);
+	}
+
+	public StringBuilder appendTo(StringBuilder sb, Object... args) {
+		if(args.length != parts.length - 1){
+			throw new IllegalArgumentException("expected " + (parts.length - 1) + " arguments, got " + args.length);
+		}
+		sb.append(parts[0]);
+		for (int i = 0; i < args.length; i++) {
+			Object arg = args[i];
+			if(arg instanceof CharSequence){
+				sb.append((CharSequence) arg);
+			} else {
+				sb.append(arg);
+			}
+			sb.append(parts[i + 1]);
+		}
+		return sb;
+	}
+}
@@ -0,0 +1,61 @@
+package net.tcgone.carddb.tools;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns card names into enum constant names in one pass: upper case, spaces and ascii punctuation collapsed
+ * into single underscores, 'É' to 'E'. Results are cached per name since reprints share names. Thread safe.
+ * @author axpendix@hotmail.com
+ */
+public class IdentifierNormalizer {
+
+	private static final boolean[] separators = new boolean[128];
+
+	static {
+		// same as regex [ \p{Punct}]
+		for (char ch : " !\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~".toCharArray()) {
+			separators[ch] = true;
+		}
+	}
+
+	private final Map<String, String> cache = new ConcurrentHashMap<>();
+
+	public String normalize(String name) {
+		return cache.computeIfAbsent(name, IdentifierNormalizer::toIdentifier);
+	}
+
+	private static String toIdentifier(String name) {
+		StringBuilder sb = new StringBuilder(name.length());
+		for (int i = 0; i < name.length(); ) {
+			int cp = name.codePointAt(i);
+			i += Character.charCount(cp);
+			if(cp < 128){
+				append(sb, cp >= 'a' && cp <= 'z' ? (char) (cp - 32) : (char) cp);
+			} else if(cp == '–' || cp == '’'){
+				// dashes and apostrophes end up as separators
+				append(sb, '_');
+			} else {
+				// rare, let String handle special casings like ß -> SS
+				String upper = new String(Character.toChars(cp)).toUpperCase(Locale.ENGLISH);
+				for (int j = 0; j < upper.length(); j++) {
+					append(sb, upper.charAt(j));
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void append(StringBuilder sb, char ch) {
+		if(ch < 128 && separators[ch]){
+			if(sb.length() == 0 || sb.charAt(sb.length() - 1) != '_'){
+				sb.append('_');
+			}
+		} else if(ch == 'É'){
+			sb.append('E');
+		} else {
+			sb.append(ch);
+		}
+	}
+}
@@ -4,13 +4,13 @@ import com.google.common.collect.ImmutableMap;
 import net.tcgone.carddb.model.*;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.text.WordUtils;
+import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
-import org.apache.velocity.app.Velocity;
+import org.apache.velocity.app.VelocityEngine;
 import org.springframework.stereotype.Component;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.Writer;
+import javax.annotation.PostConstruct;
+import java.io.*;
 import java.util.*;
 
 /**
@@ -19,15 +19,149 @@ import java.util.*;
 @Component
 public class ImplTmplGenerator {
 
+	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(ImplTmplGenerator.class);
+
+	// impl snippets, parsed once
+	private static final Fragment WEAKNESS = new Fragment("weakness %s\n\t\t\t\t");
+	private static final Fragment WEAKNESS_WITH_VALUE = new Fragment("weakness %s, '%s'\n\t\t\t\t");
+	private static final Fragment RESISTANCE = new Fragment("resistance %s%s\n\t\t\t\t");
+	private static final Fragment POKEMON_POWER = new Fragment("pokemonPower \"%s\", {\n" +
+			"\t\t\t\t\ttext \"%s\"\n" +
+			"\t\t\t\t\tactionA {\n" +
+			"\t\t\t\t\t}\n" +
+			"\t\t\t\t}\n\t\t\t\t");
+	private static final Fragment POKE_POWER = new Fragment("pokePower \"%s\", {\n" +
+			"\t\t\t\t\ttext \"%s\"\n" +
+			"\t\t\t\t\tactionA {\n" +
+			"\t\t\t\t\t}\n" +
+			"\t\t\t\t}\n\t\t\t\t");
+	private static final Fragment POKE_BODY = new Fragment("pokeBody \"%s\", {\n" +
+			"\t\t\t\t\ttext \"%s\"\n" +
+			"\t\t\t\t\tdelayedA {\n" +
+			"\t\t\t\t\t}\n" +
+			"\t\t\t\t}\n\t\t\t\t");
+	private static final Fragment BW_ABILITY = new Fragment("bwAbility \"%s\", {\n" +
+			"\t\t\t\t\ttext \"%s\"\n" +
+			"\t\t\t\t\tactionA {\n" +
+			"\t\t\t\t\t}\n" +
+			"\t\t\t\t}\n\t\t\t\t");
+	private static final Fragment ANCIENT_TRAIT = new Fragment("ancientTrait \"%s\", {\n" +
+			"\t\t\t\t\ttext \"%s\"\n" +
+			"\t\t\t\t\tdelayedA {\n" +
+			"\t\t\t\t\t}\n" +
+			"\t\t\t\t}\n\t\t\t\t");
+	// name, damage, " damage. ", text, cost, "damage ", damage digits
+	private static final Fragment MOVE = new Fragment("move \"%s\", {\n" +
+			"\t\t\t\t\ttext \"%s%s%s\"\n" +
+			"\t\t\t\t\tenergyCost %s\n" +
+			"\t\t\t\t\tattackRequirement {}\n" +
+			"\t\t\t\t\tonAttack {\n" +
+			"\t\t\t\t\t\t%s%s\n" +
+			"\t\t\t\t\t}\n" +
+			"\t\t\t\t}\n\t\t\t\t");
+	private static final Fragment BABY = new Fragment("baby (this, successors:%s, hp:%s, type:%s, retreatCost:%s) {\n" +
+			"\t\t\t\t%s%s%s%s\n" +
+			"\t\t\t}");
+	private static final Fragment BASIC = new Fragment("basic (this, hp:%s, type:%s, retreatCost:%s) {\n" +
+			"\t\t\t\t%s%s%s%s\n" +
+			"\t\t\t}");
+	private static final Fragment EVOLUTION = new Fragment("evolution (this, from:\"%s\", hp:%s, type:%s, retreatCost:%s) {\n" +
+			"\t\t\t\t%s%s%s%s\n" +
+			"\t\t\t}");
+	private static final Fragment SUPPORTER = new Fragment("supporter (this) {\n" +
+			"\t\t\t\ttext \"%s\"\n" +
+			"\t\t\t\tonPlay {\n" +
+			"\t\t\t\t}\n" +
+			"\t\t\t\tplayRequirement{\n" +
+			"\t\t\t\t}\n" +
+			"\t\t\t}");
+	private static final Fragment STADIUM = new Fragment("stadium (this) {\n" +
+			"\t\t\t\ttext \"%s\"\n" +
+			"\t\t\t\tonPlay {\n" +
+			"\t\t\t\t}\n" +
+			"\t\t\t\tonRemoveFromPlay{\n" +
+			"\t\t\t\t}\n" +
+			"\t\t\t}");
+	private static final Fragment POKEMON_TOOL = new Fragment("pokemonTool (this) {\n" +
+			"\t\t\t\ttext \"%s\"\n" +
+			"\t\t\t\tonPlay {reason->\n" +
+			"\t\t\t\t}\n" +
+			"\t\t\t\tonRemoveFromPlay {\n" +
+			"\t\t\t\t}\n" +
+			"\t\t\t\tallowAttach {to->\n" +
+			"\t\t\t\t}\n" +
+			"\t\t\t}");
+	private static final Fragment ITEM = new Fragment("itemCard (this) {\n" +
+			"\t\t\t\ttext \"%s\"\n" +
+			"\t\t\t\tonPlay {\n" +
+			"\t\t\t\t}\n" +
+			"\t\t\t\tplayRequirement{\n" +
+			"\t\t\t\t}\n" +
+			"\t\t\t}");
+	private static final Fragment BASIC_TRAINER = new Fragment("basicTrainer (this) {\n" +
+			"\t\t\t\ttext \"%s\"\n" +
+			"\t\t\t\tonPlay {\n" +
+			"\t\t\t\t}\n" +
+			"\t\t\t\tplayRequirement{\n" +
+			"\t\t\t\t}\n" +
+			"\t\t\t}");
+	private static final Fragment SPECIAL_ENERGY = new Fragment("specialEnergy (this, [[C]]) {\n" +
+			"\t\t\t\ttext \"%s\"\n" +
+			"\t\t\t\tonPlay {reason->\n" +
+			"\t\t\t\t}\n" +
+			"\t\t\t\tonRemoveFromPlay {\n" +
+			"\t\t\t\t}\n" +
+			"\t\t\t\tonMove {to->\n" +
+			"\t\t\t\t}\n" +
+			"\t\t\t\tallowAttach {to->\n" +
+			"\t\t\t\t}\n" +
+			"\t\t\t}");
+
 	private Map<String,String> typesMap = ImmutableMap.<String,String>builder().put("R","Fire").put("G","Grass").put("W","Water").put("F","Fighting").put("C","Colorless").put("L","Lightning").put("P","Psychic").put("D","Darkness").put("M","Metal").put("N","Dragon").put("Y","Fairy").build();
 
-	public void writeAll(Collection<SetFile> setFiles) throws Exception {
+	private Template template;
+
+	@PostConstruct
+	void init() throws Exception {
+		VelocityEngine engine = new VelocityEngine();
+		engine.setProperty("resource.loader", "class");
+		engine.setProperty("class.resource.loader.description", "Velocity Classpath Resource Loader");
+		engine.setProperty("class.resource.loader.class", "org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader");
+		engine.init();
+		template = engine.getTemplate("set2.vm", "UTF-8");
+	}
+
+	public OutputTracker writeAll(Collection<SetFile> setFiles) throws Exception {
+		return writeAll(setFiles, 1);
+	}
+
+	/**
+	 * Sets are independent of each other, so they are generated on a fork join pool of given parallelism.
+	 * The parsed template is shared, every set gets its own context. Files whose content did not change are left
+	 * untouched.
+	 */
+	public OutputTracker writeAll(Collection<SetFile> setFiles, int parallelism) throws Exception {
 		new File("impl").mkdirs();
-		for (SetFile setFile : setFiles) {
-			write(setFile);
+		OutputTracker tracker = new OutputTracker("Impl tmpls");
+		ParallelTasks.forEach(setFiles, parallelism, setFile -> write(setFile, tracker));
+		tracker.logSummary();
+		return tracker;
+	}
+	private void write(SetFile setFile, OutputTracker tracker) throws Exception {
+		Map<String, Object> modelmap = buildModel(setFile);
+		File file = new File(String.format("impl/%s.groovy", modelmap.get("classname")));
+		try {
+			tracker.write(file.toPath(), writer -> render(modelmap, writer));
+		} catch (Exception e) {
+			throw new IllegalStateException("Cannot generate "+file+" for "+setFile.set.name, e);
 		}
 	}
-	private void write(SetFile setFile) throws Exception {
+
+	void render(Map<String, Object> modelmap, Writer writer) {
+		template.merge(new VelocityContext(modelmap), writer);
+	}
+
+	Map<String, Object> buildModel(SetFile setFile) {
 		/*
 		 * set.vm requires:
 		 * classname foldername collection
@@ -45,6 +179,15 @@ public class ImplTmplGenerator {
 		modelmap.put("list1", list1);
 		modelmap.put("list2", list2);
 
+		// reused for every card of the set
+		StringBuilder weakness = new StringBuilder();
+		StringBuilder resistance = new StringBuilder();
+		StringBuilder moves = new StringBuilder();
+		StringBuilder abilities = new StringBuilder();
+		StringBuilder implBuilder = new StringBuilder();
+		Map<String, List2Item> list2ById = new HashMap<>();
+		int sameSetReprints = 0;
+
 		// the magic happens here
 		block_card:
 		for(Card card:setFile.cards){
@@ -58,10 +201,11 @@ public class ImplTmplGenerator {
 				cardtext=StringUtils.join(card.text,"\" +\n\t\t\t\t\t\"");
 			}
 			String typesCombined = null;
-			StringBuilder weakness = new StringBuilder();
-			StringBuilder resistance = new StringBuilder();
-			StringBuilder moves = new StringBuilder();
-			StringBuilder abilities = new StringBuilder();
+			weakness.setLength(0);
+			resistance.setLength(0);
+			moves.setLength(0);
+			abilities.setLength(0);
+			implBuilder.setLength(0);
 
 			// rarity
 			rarity = card.rarity.toUpperCase(Locale.ENGLISH);
@@ -78,7 +222,7 @@ public class ImplTmplGenerator {
 				if (hp.length() < 3) {
 					hp = "0" + hp;
 				}
-				hp = String.format("HP%s", hp);
+				hp = "HP" + hp;
 				//types
 				if (card.types != null) {
 					if (card.types.size() == 1) {
@@ -96,7 +240,11 @@ public class ImplTmplGenerator {
 				predecessor=card.evolvesFrom;
 				if(card.weaknesses!=null){
 					for (WeaknessResistance wr : card.weaknesses) {
-						weakness.append(String.format("weakness %s%s\n\t\t\t\t", wr.type, !wr.value.equalsIgnoreCase("x2")?", '"+wr.value+"'":""));
+						if(!wr.value.equalsIgnoreCase("x2")){
+							WEAKNESS_WITH_VALUE.appendTo(weakness, wr.type, wr.value);
+						} else {
+							WEAKNESS.appendTo(weakness, wr.type);
+						}
 					}
 				}
 				if(card.resistances!=null){
@@ -104,152 +252,70 @@ public class ImplTmplGenerator {
 						String typ = "";
 						if("-20".equals(wr.value)) typ=", MINUS20";
 						if("-30".equals(wr.value)) typ=", MINUS30";
-						resistance.append(String.format("resistance %s\n\t\t\t\t", wr.type+typ));
+						RESISTANCE.appendTo(resistance, wr.type, typ);
 					}
 				}
 				if(card.abilities!=null) {
 					for (Ability a : card.abilities) {
 						if(a.type.equalsIgnoreCase("Pokémon Power")) {
-							abilities.append(String.format("pokemonPower \"%s\", {\n" +
-									"\t\t\t\t\ttext \"%s\"\n" +
-									"\t\t\t\t\tactionA {\n" +
-									"\t\t\t\t\t}\n" +
-									"\t\t\t\t}\n\t\t\t\t", a.name, a.text));
+							POKEMON_POWER.appendTo(abilities, a.name, a.text);
 						}
 						if(a.type.equalsIgnoreCase("Poké-Power")) {
-							abilities.append(String.format("pokePower \"%s\", {\n" +
-									"\t\t\t\t\ttext \"%s\"\n" +
-									"\t\t\t\t\tactionA {\n" +
-									"\t\t\t\t\t}\n" +
-									"\t\t\t\t}\n\t\t\t\t", a.name, a.text));
+							POKE_POWER.appendTo(abilities, a.name, a.text);
 						}
 						if(a.type.equalsIgnoreCase("Poké-Body")) {
-							abilities.append(String.format("pokeBody \"%s\", {\n" +
-									"\t\t\t\t\ttext \"%s\"\n" +
-									"\t\t\t\t\tdelayedA {\n" +
-									"\t\t\t\t\t}\n" +
-									"\t\t\t\t}\n\t\t\t\t", a.name, a.text));
+							POKE_BODY.appendTo(abilities, a.name, a.text);
 						}
 						if(a.type.equalsIgnoreCase("Ability")) {
-							abilities.append(String.format("bwAbility \"%s\", {\n" +
-									"\t\t\t\t\ttext \"%s\"\n" +
-									"\t\t\t\t\tactionA {\n" +
-									"\t\t\t\t\t}\n" +
-									"\t\t\t\t}\n\t\t\t\t", a.name, a.text));
+							BW_ABILITY.appendTo(abilities, a.name, a.text);
 						}
 						if(a.type.equalsIgnoreCase("Ancient Trait") || a.name.startsWith("Ω") || a.name.startsWith("α") || a.name.startsWith("Δ") || a.name.startsWith("θ")) {
-							abilities.append(String.format("ancientTrait \"%s\", {\n" +
-									"\t\t\t\t\ttext \"%s\"\n" +
-									"\t\t\t\t\tdelayedA {\n" +
-									"\t\t\t\t\t}\n" +
-									"\t\t\t\t}\n\t\t\t\t", a.name, a.text));
+							ANCIENT_TRAIT.appendTo(abilities, a.name, a.text);
 						}
 					}
 				}
 				if(card.moves!=null) {
 					for (Move m : card.moves) {
-						String movedesc = "";
-						String movedamg = null;
-						if(m.damage!=null){
-							movedesc+=m.damage+" damage. ";
-							movedamg=m.damage.replaceAll("[^\\d]","");
-						}
-						if(m.text!=null)
-							movedesc+=m.text;
-						moves.append(String.format("move \"%s\", {\n" +
-								"\t\t\t\t\ttext \"%s\"\n" +
-								"\t\t\t\t\tenergyCost %s\n" +
-								"\t\t\t\t\tattackRequirement {}\n" +
-								"\t\t\t\t\tonAttack {\n" +
-								"\t\t\t\t\t\t%s\n" +
-								"\t\t\t\t\t}\n" +
-								"\t\t\t\t}\n\t\t\t\t", m.name, movedesc, StringUtils.join(m.cost,", "),movedamg!=null?"damage "+movedamg:""));
-
+						// empty damage is dropped from yaml, leave it out of the impl just the same
+						boolean damage = m.damage!=null && !m.damage.isEmpty();
+						MOVE.appendTo(moves, m.name,
+								damage ? m.damage : "", damage ? " damage. " : "", m.text!=null ? m.text : "",
+								StringUtils.join(m.cost,", "),
+								damage ? "damage " : "", damage ? digitsOf(m.damage) : "");
 					}
 				}
 			}
 
 			String impl=null;
 			if (cardTypeSet.contains("BABY")) {
-				impl =  String.format("baby (this, successors:%s, hp:%s, type:%s, retreatCost:%s) {\n" +
-						"\t\t\t\t%s%s%s%s\n" +
-						"\t\t\t}", 
-						"'SUCCESSOR(S)'", hp, typesCombined, rc, weakness.toString(), resistance.toString(), abilities.toString(), moves.toString());
+				impl = BABY.appendTo(implBuilder, "'SUCCESSOR(S)'", hp, typesCombined, rc, weakness, resistance, abilities, moves).toString();
 			}
 			else if (cardTypeSet.contains("BASIC") || cardTypeSet.contains("RESTORED")) {
-				impl =  String.format("basic (this, hp:%s, type:%s, retreatCost:%s) {\n" +
-						"\t\t\t\t%s%s%s%s\n" +
-						"\t\t\t}", 
-						hp, typesCombined, rc, weakness.toString(), resistance.toString(), abilities.toString(), moves.toString());
+				impl = BASIC.appendTo(implBuilder, hp, typesCombined, rc, weakness, resistance, abilities, moves).toString();
 			}
 			else if (cardTypeSet.contains("EVOLUTION")) {
-				impl =  String.format("evolution (this, from:\"%s\", hp:%s, type:%s, retreatCost:%s) {\n" +
-						"\t\t\t\t%s%s%s%s\n" +
-						"\t\t\t}", 
-						predecessor, hp, typesCombined, rc, weakness.toString(), resistance.toString(), abilities.toString(), moves.toString());
+				impl = EVOLUTION.appendTo(implBuilder, predecessor, hp, typesCombined, rc, weakness, resistance, abilities, moves).toString();
 			}
 			else if (cardTypeSet.contains("SUPPORTER")) {
-				impl =  String.format("supporter (this) {\n" +
-						"\t\t\t\ttext \"%s\"\n" +
-						"\t\t\t\tonPlay {\n" +  
-						"\t\t\t\t}\n" +
-						"\t\t\t\tplayRequirement{\n" +
-						"\t\t\t\t}\n" +
-						"\t\t\t}", cardtext);
+				impl = SUPPORTER.appendTo(implBuilder, cardtext).toString();
 			}
 			else if (cardTypeSet.contains("STADIUM")){
-				impl =  String.format("stadium (this) {\n" +
-						"\t\t\t\ttext \"%s\"\n" +
-						"\t\t\t\tonPlay {\n" +  
-						"\t\t\t\t}\n" +
-						"\t\t\t\tonRemoveFromPlay{\n" +
-						"\t\t\t\t}\n" +
-						"\t\t\t}", cardtext);
+				impl = STADIUM.appendTo(implBuilder, cardtext).toString();
 			}
 			else if (cardTypeSet.contains("POKEMON_TOOL")){
-				impl =  String.format("pokemonTool (this) {\n" +
-						"\t\t\t\ttext \"%s\"\n" +
-						"\t\t\t\tonPlay {reason->\n" +
-						"\t\t\t\t}\n" +
-						"\t\t\t\tonRemoveFromPlay {\n" +
-						"\t\t\t\t}\n" +
-						"\t\t\t\tallowAttach {to->\n" +
-						"\t\t\t\t}\n" +
-						"\t\t\t}", cardtext);
+				impl = POKEMON_TOOL.appendTo(implBuilder, cardtext).toString();
 			}
 			else if (cardTypeSet.contains("ITEM")) {
-				impl =  String.format("itemCard (this) {\n" +
-								"\t\t\t\ttext \"%s\"\n" +
-								"\t\t\t\tonPlay {\n" +
-								"\t\t\t\t}\n" +
-								"\t\t\t\tplayRequirement{\n" +
-								"\t\t\t\t}\n" +
-								"\t\t\t}", cardtext);
+				impl = ITEM.appendTo(implBuilder, cardtext).toString();
 			}
 			else if (cardTypeSet.contains("TRAINER")) {
-				impl =  String.format("basicTrainer (this) {\n" +
-						"\t\t\t\ttext \"%s\"\n" +
-						"\t\t\t\tonPlay {\n" +  
-						"\t\t\t\t}\n" +
-						"\t\t\t\tplayRequirement{\n" +
-						"\t\t\t\t}\n" +
-						"\t\t\t}", cardtext);
+				impl = BASIC_TRAINER.appendTo(implBuilder, cardtext).toString();
 			}
 			else if (cardTypeSet.contains("SPECIAL_ENERGY")) {
-				impl =  String.format("specialEnergy (this, [[C]]) {\n" +
-						"\t\t\t\ttext \"%s\"\n" +
-						"\t\t\t\tonPlay {reason->\n" +
-						"\t\t\t\t}\n" +
-						"\t\t\t\tonRemoveFromPlay {\n" +
-						"\t\t\t\t}\n" +
-						"\t\t\t\tonMove {to->\n" +
-						"\t\t\t\t}\n" +
-						"\t\t\t\tallowAttach {to->\n" +
-						"\t\t\t\t}\n" +
-						"\t\t\t}", cardtext);
+				impl = SPECIAL_ENERGY.appendTo(implBuilder, cardtext).toString();
 			}
 			else if (cardTypeSet.contains("BASIC_ENERGY")) {
-				impl =  String.format("basicEnergy (this, %s)", card.energy.get(0).get(0));
+				impl = "basicEnergy (this, " + card.energy.get(0).get(0) + ")";
 			}
 			if(impl == null){
 				throw new IllegalStateException("Impl null:"+card.name+","+card.number);
@@ -257,12 +323,11 @@ public class ImplTmplGenerator {
 
 			if(card.copyOf != null){
 				//search for reprints in same set
-				for(List2Item list2Item : list2){
-					if(list2Item.getId().equals(card.copyOf)){
-						impl = String.format("copy (%s, this)", list2Item.name);
-						System.out.println("REPRINT_SAME "+ list2Item.name);
-						break;
-					}
+				List2Item original = list2ById.get(card.copyOf);
+				if(original != null){
+					impl = "copy (" + original.name + ", this)";
+					log.debug("REPRINT_SAME {}", original.name);
+					sameSetReprints++;
 				}
 			}
 
@@ -278,21 +343,22 @@ public class ImplTmplGenerator {
 			item2.name = card.enumId;
 			item2.impl = impl;
 			list2.add(item2);
+			list2ById.putIfAbsent(item2.id, item2);
+		}
+		if(sameSetReprints > 0){
+			log.info("{} has {} reprints of cards in the same set", setFile.set.name, sameSetReprints);
 		}
+		return modelmap;
+	}
 
-		try {
-			Properties properties = new Properties();
-			properties.setProperty("resource.loader", "class");
-			properties.setProperty("class.resource.loader.description", "Velocity Classpath Resource Loader");
-			properties.setProperty("class.resource.loader.class", "org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader");
-			Velocity.init(properties);
-			VelocityContext context = new VelocityContext(modelmap);
-			Writer writer = new FileWriter(new File(String.format("impl/%s.groovy", modelmap.get("classname"))));
-			Velocity.mergeTemplate("set2.vm", "UTF-8", context, writer);
-			writer.close();
-		} catch (Exception e) {
-			e.printStackTrace();
+	// same as s.replaceAll("[^\\d]","")
+	private static String digitsOf(String s) {
+		StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char ch = s.charAt(i);
+			if(ch >= '0' && ch <= '9') sb.append(ch);
 		}
+		return sb.toString();
 	}
 
 	public static class List1Item {
@@ -0,0 +1,109 @@
+package net.tcgone.carddb.tools;
+
+import net.tcgone.carddb.model.Card;
+
+import java.util.*;
+
+/**
+ * Cards of every input file as loaded, so that watch mode can convert a changed file again and still prepare and
+ * resolve reprints over the whole database like a full run. Files keep their argument order, pio files first.
+ * @author axpendix@hotmail.com
+ */
+class Inputs {
+
+	// card fields that reprint resolution overwrites
+	private static class LoadedState {
+		final String copyOf;
+		final String copyType;
+
+		LoadedState(Card card) {
+			copyOf = card.copyOf;
+			copyType = card.copyType;
+		}
+
+		void restore(Card card) {
+			card.copyOf = copyOf;
+			card.copyType = copyType;
+		}
+	}
+
+	final List<String> pioFiles;
+	// pio file -> stage 1 names its conversion added
+	final Map<String, Set<String>> stage1Names = new HashMap<>();
+	private final Map<String, List<Card>> cards = new LinkedHashMap<>();
+	private final Map<Card, LoadedState> states = new IdentityHashMap<>();
+	// card id -> copyOf and copyType resolved by the last run
+	private final Map<String, String> reprints = new HashMap<>();
+
+	Inputs(List<String> pioFiles) {
+		this.pioFiles = pioFiles;
+	}
+
+	/**
+	 * Adds or replaces the cards of a file.
+	 * @param stage1Names stage 1 names added by a pio file, null for yaml files
+	 * @return enum ids of the sets of the replaced and the new cards
+	 */
+	Set<String> put(String filename, List<Card> fileCards, Set<String> stage1Names) {
+		Set<String> sets = new HashSet<>();
+		List<Card> previous = cards.put(filename, fileCards);
+		if(previous != null){
+			for (Card card : previous) {
+				states.remove(card);
+				sets.add(card.set.enumId);
+			}
+		}
+		for (Card card : fileCards) {
+			states.put(card, new LoadedState(card));
+			sets.add(card.set.enumId);
+		}
+		if(stage1Names != null){
+			this.stage1Names.put(filename, stage1Names);
+		}
+		return sets;
+	}
+
+	/**
+	 * @return stage 1 names known before converting the pio file at index
+	 */
+	Set<String> stage1NamesBefore(int index) {
+		Set<String> names = new HashSet<>();
+		for (String filename : pioFiles.subList(0, index)) {
+			names.addAll(stage1Names.get(filename));
+		}
+		return names;
+	}
+
+	int size() {
+		return states.size();
+	}
+
+	/**
+	 * @return all cards in input order, with reprint fields reset to how they were loaded
+	 */
+	List<Card> restore() {
+		List<Card> all = new ArrayList<>(states.size());
+		for (List<Card> fileCards : cards.values()) {
+			for (Card card : fileCards) {
+				states.get(card).restore(card);
+				all.add(card);
+			}
+		}
+		return all;
+	}
+
+	/**
+	 * Records the reprints resolved for cards.
+	 * @return enum ids of the sets with cards whose reprint resolution changed since the last call
+	 */
+	Set<String> updateReprints(List<Card> resolved) {
+		Set<String> sets = new HashSet<>();
+		for (Card card : resolved) {
+			String reprint = card.copyOf + "/" + card.copyType;
+			if(!reprint.equals(reprints.put(card.id, reprint))){
+				sets.add(card.set.enumId);
+			}
+		}
+		return sets;
+	}
+}
@@ -0,0 +1,86 @@
+package net.tcgone.carddb.tools;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replaces generated files only when their content changed, so untouched files keep their mtime and downstream
+ * builds skip them. Output is rendered into a temp file next to the target while being hashed, and moved over
+ * the target atomically only if the existing file hashes differently. Thread safe.
+ * @author axpendix@hotmail.com
+ */
+public class OutputTracker {
+
+	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(OutputTracker.class);
+
+	public enum Outcome {
+		NEW, CHANGED, UNCHANGED
+	}
+
+	public interface Body {
+		void writeTo(Writer writer) throws IOException;
+	}
+
+	private final String name;
+	private final Map<Outcome, AtomicInteger> counts = new EnumMap<>(Outcome.class);
+	private final AtomicLong bytesWritten = new AtomicLong();
+
+	public OutputTracker(String name) {
+		this.name = name;
+		for (Outcome outcome : Outcome.values()) {
+			counts.put(outcome, new AtomicInteger());
+		}
+	}
+
+	public Outcome write(Path target, Body body) throws IOException {
+		Path parent = target.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path tmp = Files.createTempFile(parent, target.getFileName().toString(), ".tmp");
+		try {
+			MessageDigest digest = Digests.sha256();
+			try (Writer writer = new BufferedWriter(new OutputStreamWriter(new DigestOutputStream(Files.newOutputStream(tmp), digest), StandardCharsets.UTF_8))) {
+				body.writeTo(writer);
+			}
+			Outcome outcome;
+			if(!Files.exists(target)){
+				outcome = Outcome.NEW;
+			} else if(Files.size(target) == Files.size(tmp) && Arrays.equals(Digests.sha256(target), digest.digest())){
+				outcome = Outcome.UNCHANGED;
+			} else {
+				outcome = Outcome.CHANGED;
+			}
+			if(outcome != Outcome.UNCHANGED){
+				bytesWritten.addAndGet(Files.size(tmp));
+				Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			counts.get(outcome).incrementAndGet();
+			log.debug("{} {}", outcome, target);
+			return outcome;
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	public int count(Outcome outcome) {
+		return counts.get(outcome).get();
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	public void logSummary() {
+		log.info("{}: {} new, {} changed, {} unchanged ({} bytes written)", name,
+			count(Outcome.NEW), count(Outcome.CHANGED), count(Outcome.UNCHANGED), getBytesWritten());
+	}
+}
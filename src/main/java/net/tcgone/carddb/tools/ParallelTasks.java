@@ -0,0 +1,55 @@
+package net.tcgone.carddb.tools;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs independent per item work on a fork join pool of given parallelism, or inline when parallelism is 1.
+ * The first failure is rethrown once all items are done.
+ * @author axpendix@hotmail.com
+ */
+public final class ParallelTasks {
+
+	public interface Task<T> {
+		void run(T item) throws Exception;
+	}
+
+	private ParallelTasks() {
+	}
+
+	public static <T> void forEach(Collection<T> items, int parallelism, Task<T> task) throws Exception {
+		if(parallelism<=1){
+			for (T item : items) {
+				task.run(item);
+			}
+			return;
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			List<Callable<Void>> callables = new ArrayList<>(items.size());
+			for (T item : items) {
+				callables.add(() -> {
+					task.run(item);
+					return null;
+				});
+			}
+			for (Future<Void> future : pool.invokeAll(callables)) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					if(e.getCause() instanceof Exception){
+						throw (Exception) e.getCause();
+					}
+					throw e;
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
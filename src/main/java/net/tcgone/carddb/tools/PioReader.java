@@ -15,21 +15,26 @@ limitations under the License.
 */
 package net.tcgone.carddb.tools;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import net.tcgone.carddb.model.Ability;
 import net.tcgone.carddb.model.Card;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.text.WordUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.apache.commons.lang3.StringUtils.trimToNull;
@@ -42,40 +47,116 @@ public class PioReader {
 
 	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(PioReader.class);
 
+	private final ObjectReader pioCardReader = new ObjectMapper()
+			.enable(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY)
+			.readerFor(PioCard.class);
+
+	private final ValuePool valuePool;
+
+	public PioReader() {
+		this(new ValuePool());
+	}
+
+	@Autowired
+	public PioReader(ValuePool valuePool) {
+		this.valuePool = valuePool;
+	}
+
 	public List<Card> load(InputStream inputStream) throws IOException {
-		ObjectMapper mapper = new ObjectMapper()
-				.enable(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY);
-//        Resource[] resources = applicationContext.getResources("classpath:/pio/*.json");
-		Map<String, Set<String>> superToSub = new LinkedHashMap<>();
 		List<Card> cards=new ArrayList<>();
+		Iterator<Card> iterator = iterate(inputStream);
+		while (iterator.hasNext()) {
+			cards.add(iterator.next());
+		}
+		return cards;
+	}
 
-//
-		List<PioCard> list = mapper.readValue(inputStream, new TypeReference<List<PioCard>>(){});
-		for (PioCard pc : list) {
-			log.info("Reading {} {}", pc.name, pc.number);
-			if(pc.rarity==null){
-				throw new IllegalStateException("rarity cannot be null");
-			}
-			pc.rarity=pc.rarity
-					.toLowerCase(Locale.ENGLISH)
-					.replace("rare secret","Secret")
-					.replace("rare ace","Rare")
-					.replace("rare holo lv.x","Rare Holo")
-					.replace("rare ultra","Ultra Rare")
-					.replace("rareultra","Ultra Rare")
-					.replace("rare prime","Rare")
-					.replace("rare break","Ultra Rare")
-					.replace("rare holo ex","Ultra Rare")
-					.replace("rare holo gx","Ultra Rare")
-					.replace("legend","Ultra Rare");
-			pc.rarity= WordUtils.capitalizeFully(pc.rarity);
-			if(!allowedRarities.contains(pc.rarity)){
-				throw new IllegalStateException(pc.rarity+" cannot be accepted as rarity, please fix.");
+	/**
+	 * Streams cards out of a pio/kirby json array one by one, each card is converted as soon as its json object
+	 * has been parsed so the whole file is never held in memory. The input stream is closed once exhausted.
+	 */
+	public Iterator<Card> iterate(InputStream inputStream) throws IOException {
+		MappingIterator<PioCard> pioCards = pioCardReader.readValues(inputStream);
+		Map<String, List<String>> invalidRarities = new LinkedHashMap<>();
+		return new Iterator<Card>() {
+			@Override
+			public boolean hasNext() {
+				if(pioCards.hasNext()){
+					return true;
+				}
+				try {
+					pioCards.close();
+					inputStream.close();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				checkRarities(invalidRarities);
+				return false;
 			}
 
-			if(pc.supertype.equals("Pokémon") && pc.types == null){
-				log.warn("NULL TYPES for "+pc.id+", "+pc.name);
+			@Override
+			public Card next() {
+				return readCard(pioCards.next(), invalidRarities);
 			}
+		};
+	}
+
+	/**
+	 * Same as {@link #iterate(InputStream)}, close the returned stream to release the input early.
+	 */
+	public Stream<Card> stream(InputStream inputStream) throws IOException {
+		Iterator<Card> iterator = iterate(inputStream);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(() -> {
+					try {
+						inputStream.close();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+	}
+
+	/**
+	 * Parses pio/kirby json without converting it. Safe to call concurrently, used by parallel loading where
+	 * parsing happens on worker threads and {@link #convert(List)} is applied in input order afterwards.
+	 */
+	public List<PioCard> parse(InputStream inputStream) throws IOException {
+		try (MappingIterator<PioCard> pioCards = pioCardReader.readValues(inputStream)) {
+			return pioCards.readAll();
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	/**
+	 * Converts cards parsed by {@link #parse(InputStream)}. Evolution stage of old ex cards depends on
+	 * previously converted stage 1 cards, so call this in the same order as sequential loading for identical output.
+	 */
+	public List<Card> convert(List<PioCard> pioCards) {
+		List<Card> cards=new ArrayList<>(pioCards.size());
+		Map<String, List<String>> invalidRarities = new LinkedHashMap<>();
+		for (PioCard pc : pioCards) {
+			cards.add(readCard(pc, invalidRarities));
+		}
+		checkRarities(invalidRarities);
+		return cards;
+	}
+
+	/**
+	 * @param invalidRarities collects unaccepted rarities of the whole file (rarity -> card ids) to be reported at once
+	 */
+	private Card readCard(PioCard pc, Map<String, List<String>> invalidRarities) {
+		log.info("Reading {} {}", pc.name, pc.number);
+		String rarity = rarityNormalizer.normalize(pc.rarity);
+		if(rarity==null){
+			invalidRarities.computeIfAbsent(String.valueOf(pc.rarity), k -> new ArrayList<>()).add(pc.id);
+		} else {
+			pc.rarity=rarity;
+		}
+
+		if(pc.supertype.equals("Pokémon") && pc.types == null){
+			log.warn("NULL TYPES for "+pc.id+", "+pc.name);
+		}
 
 //                if(pc.supertype.equals("Pokémon")){
 //                    try {
@@ -88,26 +169,87 @@ public class PioReader {
 //                    log.warn("Level Up. name:{}, level:{}", pc.name, pc.level);
 //                }
 
-			if(!superToSub.containsKey(pc.supertype))
-				superToSub.put(pc.supertype,new HashSet<>());
-			superToSub.get(pc.supertype).add(pc.subtype);
+		return valuePool.intern(prepareCard(pc));
+	}
 
-			Card c1 = prepareCard(pc);
-			cards.add(c1);
+	/**
+	 * @return copy of the stage 1 pokemon names seen so far
+	 */
+	public Set<String> getStage1Names() {
+		return new HashSet<>(stage1Db);
+	}
+
+	/**
+	 * Registers stage 1 names of cards that were not loaded through this reader, i.e. served from a cache.
+	 */
+	public void addStage1Names(Collection<String> names) {
+		stage1Db.addAll(names);
+	}
 
+	/**
+	 * Replaces the stage 1 names seen so far, to convert a file again as if the files before it were just loaded.
+	 */
+	public void resetStage1Names(Collection<String> names) {
+		stage1Db.clear();
+		stage1Db.addAll(names);
+	}
+
+	private void checkRarities(Map<String, List<String>> invalidRarities) {
+		if(!invalidRarities.isEmpty()){
+			StringBuilder sb = new StringBuilder("Following rarities cannot be accepted, please fix.");
+			invalidRarities.forEach((rarity, ids) -> sb.append("\n\t").append(rarity).append(": ").append(ids));
+			throw new IllegalStateException(sb.toString());
 		}
-//		log.info("superToSub: /{}/", superToSub);
-		inputStream.close();
-		return cards;
 	}
 
-	private Set<String> stage1Db = new HashSet<>();
+	// shared between loads, concurrent so that files can be loaded from multiple threads
+	private Set<String> stage1Db = ConcurrentHashMap.newKeySet();
 	private Set<String> modernSeries = ImmutableSet.of("Black & White", "XY", "Sun & Moon");
-	private Set<String> allowedRarities = ImmutableSet.of("Common","Uncommon","Rare","Ultra Rare","Rare Holo","Secret","Promo");
+	private RarityNormalizer rarityNormalizer = new RarityNormalizer();
 	private Map<String,String> typesMap = ImmutableMap.<String,String>builder().put("Fire","R").put("Grass","G").put("Water","W").put("Fighting","F").put("Colorless","C").put("Lightning","L").put("Psychic","P").put("Darkness","D").put("Metal","M").put("Dragon","N").put("Fairy","Y").build();
-	private Map<String, net.tcgone.carddb.model.Set> setMap = new HashMap<>();
+	private IdentifierNormalizer identifierNormalizer = new IdentifierNormalizer();
+	private TokenReplacer shortFormReplacer = new TokenReplacer(ImmutableMap.<String,String>builder()
+			.put("{F}", "[F]")
+			.put("{L}", "[L]")
+			.put("{R}", "[R]")
+			.put("{G}", "[G]")
+			.put("{W}", "[W]")
+			.put("{P}", "[P]")
+			.put("{C}", "[C]")
+			.put("{D}", "[D]")
+			.put("{M}", "[M]")
+			.put("{Y}", "[Y]")
+			.put("{N}", "[N]")
+			.put("Fighting Energy", "[F] Energy")
+			.put("Lightning Energy", "[L] Energy")
+			.put("Fire Energy", "[R] Energy")
+			.put("Grass Energy", "[G] Energy")
+			.put("Water Energy", "[W] Energy")
+			.put("Psychic Energy", "[P] Energy")
+			.put("Colorless Energy", "[C] Energy")
+			.put("Darkness Energy", "[D] Energy")
+			.put("Metal Energy", "[M] Energy")
+			.put("Fairy Energy", "[Y] Energy")
+			.put("Dragon Energy", "[N] Energy")
+			.put("Fighting Pokémon", "[F] Pokémon")
+			.put("Lightning Pokémon", "[L] Pokémon")
+			.put("Fire Pokémon", "[R] Pokémon")
+			.put("Grass Pokémon", "[G] Pokémon")
+			.put("Water Pokémon", "[W] Pokémon")
+			.put("Psychic Pokémon", "[P] Pokémon")
+			.put("Colorless Pokémon", "[C] Pokémon")
+			.put("Darkness Pokémon", "[D] Pokémon")
+			.put("Metal Pokémon", "[M] Pokémon")
+			.put("Fairy Pokémon", "[Y] Pokémon")
+			.put("Dragon Pokémon", "[N] Pokémon")
+			.put("Colorless", "[C]")
+			.put("Pokemon", "Pokémon")
+			.put("`", "'")
+			.put("–", "-")
+			.build());
+	private Map<String, net.tcgone.carddb.model.Set> setMap = new ConcurrentHashMap<>();
 
-	private Card prepareCard(PioCard pc) {
+	Card prepareCard(PioCard pc) {
 		Card c = new Card();
 		c.name=pc.name;
 		c.pioId=pc.id;
@@ -115,22 +257,22 @@ public class PioReader {
 		c.artist=pc.artist;
 		if(pc.text!=null)c.text=pc.text.stream().map(this::replaceTypesWithShortForms).flatMap(x->Arrays.stream(x.split("\\\\n"))).filter(s->!s.trim().isEmpty()).collect(Collectors.toList());
 		c.rarity=pc.rarity;
-		if(!setMap.containsKey(pc.setCode)){
-			CoreCollection cc = CoreCollection.findByPioCode(pc.setCode).orElseThrow(() -> new IllegalArgumentException(pc.setCode + " pioCode can't be recognized (probably it's a new set). Please update CoreCollection enum and rerun."));
-			net.tcgone.carddb.model.Set set = new net.tcgone.carddb.model.Set();
-			set.name=cc.getName();
-			set.id= String.valueOf(cc.getId());
-			set.abbr=cc.getShortName();
-			set.enumId=cc.name();
-			set.pioId=pc.setCode;
-			setMap.put(pc.setCode, set);
+		if(pc.setCode==null){
+			throw new IllegalArgumentException("null pioCode can't be recognized. Please fix "+pc.id);
 		}
-		net.tcgone.carddb.model.Set set = setMap.get(pc.setCode);
+		net.tcgone.carddb.model.Set set = setMap.computeIfAbsent(pc.setCode, setCode -> {
+			CoreCollection cc = CoreCollection.findByPioCode(setCode).orElseThrow(() -> new IllegalArgumentException(setCode + " pioCode can't be recognized (probably it's a new set). Please update CoreCollection enum and rerun."));
+			net.tcgone.carddb.model.Set newSet = new net.tcgone.carddb.model.Set();
+			newSet.name=cc.getName();
+			newSet.id= String.valueOf(cc.getId());
+			newSet.abbr=cc.getShortName();
+			newSet.enumId=cc.name();
+			newSet.pioId=setCode;
+			return newSet;
+		});
 		c.set=set;
-		c.enumId=String.format("%s_%s", pc.name
-				.replace("–","-").replace("’","'").toUpperCase(Locale.ENGLISH)
-				.replaceAll("[ \\p{Punct}]", "_").replaceAll("_+","_").replace("É", "E"), pc.number);
-		c.id=String.format("%s-%s", set.id, pc.number);
+		c.enumId=identifierNormalizer.normalize(pc.name) + "_" + pc.number;
+		c.id=set.id + "-" + pc.number;
 		c.subTypes=new ArrayList<>();
 
 		switch (pc.supertype){
@@ -297,47 +439,8 @@ public class PioReader {
 		if(types==null) return null;
 		return types.stream().map(s -> typesMap.get(s)).collect(Collectors.toList());
 	}
-	private String replaceTypesWithShortForms(String s){
-		if(s==null)return null;
-		return s
-				.replace("{F}","[F]")
-				.replace("{L}","[L]")
-				.replace("{R}","[R]")
-				.replace("{G}","[G]")
-				.replace("{W}","[W]")
-				.replace("{P}","[P]")
-				.replace("{C}","[C]")
-				.replace("{D}","[D]")
-				.replace("{M}","[M]")
-				.replace("{Y}","[Y]")
-				.replace("{N}","[N]")
-				.replace("Fighting Energy", "[F] Energy")
-				.replace("Lightning Energy", "[L] Energy")
-				.replace("Fire Energy", "[R] Energy")
-				.replace("Grass Energy", "[G] Energy")
-				.replace("Water Energy", "[W] Energy")
-				.replace("Psychic Energy", "[P] Energy")
-				.replace("Colorless Energy", "[C] Energy")
-				.replace("Darkness Energy", "[D] Energy")
-				.replace("Metal Energy", "[M] Energy")
-				.replace("Fairy Energy", "[Y] Energy")
-				.replace("Dragon Energy", "[N] Energy")
-				.replace("Fighting Pokémon", "[F] Pokémon")
-				.replace("Lightning Pokémon", "[L] Pokémon")
-				.replace("Fire Pokémon", "[R] Pokémon")
-				.replace("Grass Pokémon", "[G] Pokémon")
-				.replace("Water Pokémon", "[W] Pokémon")
-				.replace("Psychic Pokémon", "[P] Pokémon")
-				.replace("Colorless Pokémon", "[C] Pokémon")
-				.replace("Darkness Pokémon", "[D] Pokémon")
-				.replace("Metal Pokémon", "[M] Pokémon")
-				.replace("Fairy Pokémon", "[Y] Pokémon")
-				.replace("Dragon Pokémon", "[N] Pokémon")
-				.replace("Colorless", "[C]")
-				.replace("Pokemon","Pokémon")
-				.replace("`","'")
-				.replace("–","-")
-				;
+	String replaceTypesWithShortForms(String s){
+		return shortFormReplacer.replace(s);
 	}
 	private <T> T diff(String context, T new1, T old1){
 		if(!Objects.equals(new1, old1)){
@@ -0,0 +1,169 @@
+package net.tcgone.carddb.tools;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per stage wall time, card throughput, bytes read/written, allocation and error counts of a pipeline run,
+ * recorded in a Micrometer registry. Allocation is measured on the thread running the stage only, so work
+ * handed to worker pools is not included; treat it as an estimate.
+ * @author axpendix@hotmail.com
+ */
+@Component
+public class PipelineMetrics {
+
+	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(PipelineMetrics.class);
+
+	private static final String TIME = "carddb.pipeline.time";
+	private static final String CARDS = "carddb.pipeline.cards";
+	private static final String BYTES_READ = "carddb.pipeline.bytes.read";
+	private static final String BYTES_WRITTEN = "carddb.pipeline.bytes.written";
+	private static final String ALLOCATED = "carddb.pipeline.allocated";
+	private static final String ERRORS = "carddb.pipeline.errors";
+
+	public interface Stage<T> {
+		T run() throws Exception;
+	}
+
+	public interface Step {
+		void run() throws Exception;
+	}
+
+	private final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+	private volatile MeterRegistry registry = new SimpleMeterRegistry();
+	private final Set<String> stages = Collections.synchronizedSet(new LinkedHashSet<>());
+	private volatile Instant startedAt = Instant.now();
+
+	/**
+	 * Forgets everything recorded so far.
+	 */
+	public void start() {
+		registry = new SimpleMeterRegistry();
+		stages.clear();
+		startedAt = Instant.now();
+	}
+
+	public <T> T time(String stage, Stage<T> body) throws Exception {
+		stages.add(stage);
+		MeterRegistry registry = this.registry;
+		long allocatedBefore = allocatedBytes();
+		Timer.Sample sample = Timer.start(registry);
+		try {
+			return body.run();
+		} catch (Exception e) {
+			registry.counter(ERRORS, "stage", stage).increment();
+			throw e;
+		} finally {
+			sample.stop(registry.timer(TIME, "stage", stage));
+			if(allocatedBefore >= 0){
+				registry.counter(ALLOCATED, "stage", stage).increment(allocatedBytes() - allocatedBefore);
+			}
+		}
+	}
+
+	public void run(String stage, Step step) throws Exception {
+		time(stage, () -> {
+			step.run();
+			return null;
+		});
+	}
+
+	public void cards(String stage, long count) {
+		registry.counter(CARDS, "stage", stage).increment(count);
+	}
+
+	public void bytesRead(String stage, long bytes) {
+		registry.counter(BYTES_READ, "stage", stage).increment(bytes);
+	}
+
+	public void bytesWritten(String stage, long bytes) {
+		registry.counter(BYTES_WRITTEN, "stage", stage).increment(bytes);
+	}
+
+	public void errors(String stage, long count) {
+		registry.counter(ERRORS, "stage", stage).increment(count);
+	}
+
+	public void printSummary() {
+		StringBuilder sb = new StringBuilder("Pipeline summary\n");
+		sb.append(String.format("%-20s %10s %10s %10s %12s %12s %12s %6s%n",
+				"stage", "ms", "cards", "cards/s", "read", "written", "allocated", "errors"));
+		for (Map<String, Object> row : rows()) {
+			sb.append(String.format("%-20s %10d %10d %10.0f %12d %12d %12d %6d%n",
+					row.get("stage"), row.get("millis"), row.get("cards"), row.get("cardsPerSecond"),
+					row.get("bytesRead"), row.get("bytesWritten"), row.get("allocatedBytes"), row.get("errors")));
+		}
+		log.info(sb.toString().trim());
+	}
+
+	public void writeReport(Path path) throws IOException {
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("startedAt", startedAt.toString());
+		report.put("millis", System.currentTimeMillis() - startedAt.toEpochMilli());
+		report.put("stages", rows());
+		if(path.toAbsolutePath().getParent() != null){
+			Files.createDirectories(path.toAbsolutePath().getParent());
+		}
+		try (OutputStream out = Files.newOutputStream(path)) {
+			mapper.writeValue(out, report);
+		}
+		log.info("Metrics report has been written to {}", path);
+	}
+
+	private List<Map<String, Object>> rows() {
+		MeterRegistry registry = this.registry;
+		List<String> names;
+		synchronized (stages) {
+			names = new ArrayList<>(stages);
+		}
+		List<Map<String, Object>> rows = new ArrayList<>();
+		for (String stage : names) {
+			Timer timer = registry.find(TIME).tag("stage", stage).timer();
+			long millis = timer == null ? 0 : (long) timer.totalTime(TimeUnit.MILLISECONDS);
+			long cards = count(registry, CARDS, stage);
+			Map<String, Object> row = new LinkedHashMap<>();
+			row.put("stage", stage);
+			row.put("millis", millis);
+			row.put("cards", cards);
+			row.put("cardsPerSecond", millis == 0 ? 0d : cards * 1000d / millis);
+			row.put("bytesRead", count(registry, BYTES_READ, stage));
+			row.put("bytesWritten", count(registry, BYTES_WRITTEN, stage));
+			row.put("allocatedBytes", count(registry, ALLOCATED, stage));
+			row.put("errors", count(registry, ERRORS, stage));
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	private static long count(MeterRegistry registry, String name, String stage) {
+		Counter counter = registry.find(name).tag("stage", stage).counter();
+		return counter == null ? 0 : (long) counter.count();
+	}
+
+	// bytes allocated by the calling thread so far, -1 if the jvm cannot tell
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean){
+			com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+			if(sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()){
+				return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+}
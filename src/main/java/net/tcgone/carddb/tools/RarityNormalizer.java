@@ -0,0 +1,57 @@
+package net.tcgone.carddb.tools;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.apache.commons.lang3.text.WordUtils;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps raw pio/kirby rarities to TCG ONE rarities with a single lookup. Known raw values are resolved up front,
+ * anything else is resolved once and memoized. Thread safe.
+ * @author axpendix@hotmail.com
+ */
+public class RarityNormalizer {
+
+	private static final Set<String> allowedRarities = ImmutableSet.of("Common","Uncommon","Rare","Ultra Rare","Rare Holo","Secret","Promo");
+	private static final List<String> knownRawRarities = ImmutableList.of("Common","Uncommon","Rare","Rare Holo","Rare Secret","Rare Ace","Rare Holo Lv.X","Rare Ultra","Rare Prime","Rare BREAK","Rare Holo EX","Rare Holo GX","LEGEND","Promo","Secret","Ultra Rare");
+	private static final String UNKNOWN = "";
+
+	private final Map<String, String> table = new ConcurrentHashMap<>();
+
+	public RarityNormalizer() {
+		for (String raw : knownRawRarities) {
+			table.put(raw, canonicalize(raw));
+		}
+	}
+
+	/**
+	 * @return canonical rarity, or null if the raw value cannot be accepted
+	 */
+	public String normalize(String raw) {
+		if(raw==null) return null;
+		String rarity = table.computeIfAbsent(raw, RarityNormalizer::canonicalize);
+		return rarity == UNKNOWN ? null : rarity;
+	}
+
+	private static String canonicalize(String raw) {
+		String rarity=raw
+				.toLowerCase(Locale.ENGLISH)
+				.replace("rare secret","Secret")
+				.replace("rare ace","Rare")
+				.replace("rare holo lv.x","Rare Holo")
+				.replace("rare ultra","Ultra Rare")
+				.replace("rareultra","Ultra Rare")
+				.replace("rare prime","Rare")
+				.replace("rare break","Ultra Rare")
+				.replace("rare holo ex","Ultra Rare")
+				.replace("rare holo gx","Ultra Rare")
+				.replace("legend","Ultra Rare");
+		rarity=WordUtils.capitalizeFully(rarity);
+		return allowedRarities.contains(rarity) ? rarity : UNKNOWN;
+	}
+}
@@ -0,0 +1,194 @@
+package net.tcgone.carddb.tools;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import net.tcgone.carddb.model.Card;
+import net.tcgone.carddb.model.SetFile;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent {@link CardFingerprint} -> original card id index of the whole card database, so that reprints of
+ * already released cards can be resolved without loading all yaml files.
+ * <p>
+ * File layout: magic, version, entry count, entries sorted by fingerprint (long fingerprint, int id offset),
+ * then ids (int length, utf-8 bytes). The file takes a few bytes per original card, so it is read into a heap
+ * buffer and searched there. Nothing keeps it mapped or open, and it can be replaced while in use on any platform.
+ * @author axpendix@hotmail.com
+ */
+public class ReprintIndex {
+
+	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(ReprintIndex.class);
+
+	private static final int MAGIC = 0x52504958; // RPIX
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 12;
+	private static final int ENTRY_SIZE = 12;
+
+	private final Path path;
+	private ByteBuffer buffer;
+	private int count;
+
+	private ReprintIndex(Path path) {
+		this.path = path;
+	}
+
+	/**
+	 * Opens the index at path, building it from the yaml files in yamlDir first if it does not exist yet.
+	 */
+	public static ReprintIndex open(Path path, Path yamlDir) throws IOException {
+		ReprintIndex index = new ReprintIndex(path);
+		if(Files.exists(path)){
+			index.read();
+		} else {
+			index.rebuild(yamlDir);
+		}
+		return index;
+	}
+
+	/**
+	 * @return id of the original card with this fingerprint, or null
+	 */
+	public synchronized String find(long fingerprint) {
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long value = buffer.getLong(HEADER_SIZE + mid * ENTRY_SIZE);
+			if(value < fingerprint){
+				low = mid + 1;
+			} else if(value > fingerprint){
+				high = mid - 1;
+			} else {
+				return readId(buffer.getInt(HEADER_SIZE + mid * ENTRY_SIZE + 8));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Replaces the entries of given sets with their current original (non copy) cards, so edited and removed
+	 * cards do not linger. Entries of other sets win over new ones with the same fingerprint.
+	 */
+	public synchronized void addAll(Collection<SetFile> setFiles) throws IOException {
+		TreeMap<Long, String> before = readEntries();
+		TreeMap<Long, String> entries = new TreeMap<>(before);
+		Set<String> setIds = new HashSet<>();
+		for (SetFile setFile : setFiles) {
+			setIds.add(setFile.set.id);
+		}
+		entries.values().removeIf(id -> setIds.contains(setIdOf(id)));
+		for (SetFile setFile : setFiles) {
+			add(entries, setFile);
+		}
+		if(!entries.equals(before)){
+			write(entries);
+		}
+	}
+
+	// card ids are <set id>-<number>
+	private static String setIdOf(String cardId) {
+		int dash = cardId.indexOf('-');
+		return dash > 0 ? cardId.substring(0, dash) : cardId;
+	}
+
+	private void rebuild(Path yamlDir) throws IOException {
+		log.info("Building reprint index {} from {}", path, yamlDir);
+		TreeMap<Long, String> entries = new TreeMap<>();
+		if(Files.isDirectory(yamlDir)){
+			ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
+			List<Path> files;
+			try (Stream<Path> list = Files.list(yamlDir)) {
+				files = list.filter(p -> p.getFileName().toString().endsWith(".yaml"))
+						.sorted(Comparator.comparingInt(ReprintIndex::setOrder).thenComparing(Path::toString))
+						.collect(Collectors.toList());
+			}
+			for (Path file : files) {
+				try (InputStream in = Files.newInputStream(file)) {
+					add(entries, mapper.readValue(in, SetFile.class));
+				}
+			}
+		}
+		write(entries);
+	}
+
+	private static void add(Map<Long, String> entries, SetFile setFile) {
+		for (Card card : setFile.cards) {
+			if(card.copyOf == null){
+				entries.putIfAbsent(CardFingerprint.of(card), card.id);
+			}
+		}
+	}
+
+	// yaml files are named <set id>-<set enum>.yaml, older sets have lower ids
+	private static int setOrder(Path file) {
+		String name = file.getFileName().toString();
+		int dash = name.indexOf('-');
+		try {
+			return Integer.parseInt(dash > 0 ? name.substring(0, dash) : name);
+		} catch (NumberFormatException e) {
+			return Integer.MAX_VALUE;
+		}
+	}
+
+	private TreeMap<Long, String> readEntries() {
+		TreeMap<Long, String> entries = new TreeMap<>();
+		for (int i = 0; i < count; i++) {
+			int position = HEADER_SIZE + i * ENTRY_SIZE;
+			entries.put(buffer.getLong(position), readId(buffer.getInt(position + 8)));
+		}
+		return entries;
+	}
+
+	private String readId(int offset) {
+		ByteBuffer slice = buffer.duplicate();
+		slice.position(HEADER_SIZE + count * ENTRY_SIZE + offset);
+		byte[] bytes = new byte[slice.getInt()];
+		slice.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private void write(TreeMap<Long, String> entries) throws IOException {
+		Path parent = path.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path tmp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(entries.size());
+			List<byte[]> ids = new ArrayList<>(entries.size());
+			int offset = 0;
+			for (Map.Entry<Long, String> entry : entries.entrySet()) {
+				byte[] id = entry.getValue().getBytes(StandardCharsets.UTF_8);
+				out.writeLong(entry.getKey());
+				out.writeInt(offset);
+				ids.add(id);
+				offset += 4 + id.length;
+			}
+			for (byte[] id : ids) {
+				out.writeInt(id.length);
+				out.write(id);
+			}
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		read();
+		log.info("Reprint index {} has {} cards", path, count);
+	}
+
+	private void read() throws IOException {
+		buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+		if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION){
+			throw new IllegalStateException(path + " is not a reprint index, delete it to rebuild.");
+		}
+		count = buffer.getInt(8);
+	}
+}
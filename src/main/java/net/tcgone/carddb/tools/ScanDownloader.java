@@ -3,13 +3,19 @@ package net.tcgone.carddb.tools;
 import net.tcgone.carddb.model.Card;
 import org.springframework.stereotype.Component;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
-import java.util.List;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Downloads card images from pokemontcg.io
@@ -20,24 +26,187 @@ import java.util.List;
 public class ScanDownloader {
 	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(ScanDownloader.class);
 
-	public void downloadAll(List<Card> cards) {
-		for (Card card : cards) {
+	private static final int CONNECT_TIMEOUT = 10_000;
+	private static final int READ_TIMEOUT = 60_000;
+	private static final int MAX_ATTEMPTS = 4;
+	private static final long INITIAL_BACKOFF = 500;
+
+	private String baseUrl = "https://images.pokemontcg.io";
+	private Path scansDir = Paths.get("scans");
+
+	public void setBaseUrl(String baseUrl) {
+		this.baseUrl = baseUrl;
+	}
+
+	public void setScansDir(Path scansDir) {
+		this.scansDir = scansDir;
+	}
+
+	public int downloadAll(List<Card> cards) throws InterruptedException, IOException {
+		return downloadAll(cards, 1);
+	}
+
+	/**
+	 * Downloads with at most parallelism concurrent requests. Failed downloads are retried with exponential
+	 * backoff, and are reported together at the end instead of aborting the run.
+	 * Scans already on disk are checked against the size and hash in the set manifest, then revalidated through
+	 * its validators (If-None-Match/If-Modified-Since) and only downloaded again when changed.
+	 * @return number of scans that could not be downloaded
+	 */
+	public int downloadAll(List<Card> cards, int parallelism) throws InterruptedException, IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		Map<Path, ScanManifest> manifests = new LinkedHashMap<>();
+		Map<String, String> failures = new ConcurrentSkipListMap<>();
+		AtomicInteger downloaded = new AtomicInteger();
+		AtomicInteger unchanged = new AtomicInteger();
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (Card card : cards) {
+				Path setDir = scansDir.resolve(card.set.id);
+				if(!manifests.containsKey(setDir)){
+					manifests.put(setDir, ScanManifest.load(setDir));
+				}
+				ScanManifest manifest = manifests.get(setDir);
+				futures.add(executor.submit(() -> {
+					String urlString = String.format("%s/%s/%s_hires.png", baseUrl, card.set.pioId, card.number);
+					String filename = String.format("%s.png", card.number);
+					Path target = setDir.resolve(filename);
+					try {
+						if(download(urlString, target, manifest, filename)){
+							downloaded.incrementAndGet();
+						} else {
+							unchanged.incrementAndGet();
+						}
+					} catch (IOException e) {
+						failures.put(urlString, e.getMessage());
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+			for (ScanManifest manifest : manifests.values()) {
+				manifest.save();
+			}
+		}
+		log.info("Downloaded {} scans, {} unchanged, {} failed", downloaded.get(), unchanged.get(), failures.size());
+		failures.forEach((url, failure) -> log.warn("Failed {}: {}", url, failure));
+		return failures.size();
+	}
+
+	/**
+	 * @return true if downloaded, false if the local copy is up to date
+	 * @throws IOException with the failure reason once retries are exhausted
+	 */
+	private boolean download(String urlString, Path target, ScanManifest manifest, String filename) throws IOException {
+		ScanManifest.Entry entry = manifest.get(filename);
+		if(entry != null && !isIntact(target, entry)){
+			// missing, truncated or corrupted, download from scratch
+			entry = null;
+		}
+		if(entry != null && entry.etag == null && entry.lastModified == null){
+			// nothing to validate with, trust the local copy
+			return false;
+		}
+		log.info(entry == null ? "Downloading {}" : "Validating {}", urlString);
+		long backoff = INITIAL_BACKOFF;
+		for (int attempt = 1; ; attempt++) {
 			try {
-				new File(String.format("scans/%s", card.set.id)).mkdirs();
-				String urlString = String.format("https://images.pokemontcg.io/%s/%s_hires.png", card.set.pioId, card.number);
-				log.info("Downloading {}", urlString);
-				String filename = String.format("scans/%s/%s.png", card.set.id, card.number);
-				URL url = new URL(urlString);
-				ReadableByteChannel readableByteChannel = Channels.newChannel(url.openStream());
-				FileOutputStream fileOutputStream = new FileOutputStream(filename);
-				fileOutputStream.getChannel().transferFrom(readableByteChannel, 0, Long.MAX_VALUE);
-				fileOutputStream.close();
-				readableByteChannel.close();
-			} catch (java.io.FileNotFoundException e) {
-				log.error(e.getMessage(), e);
+				ScanManifest.Entry updated = fetch(new URL(urlString), target, entry);
+				if(updated == null){
+					return false;
+				}
+				manifest.put(filename, updated);
+				return true;
+			} catch (HttpStatusException e) {
+				if(!e.isRetryable() || attempt >= MAX_ATTEMPTS){
+					throw e;
+				}
 			} catch (IOException e) {
-				throw new RuntimeException(e);
+				if(attempt >= MAX_ATTEMPTS){
+					throw new IOException(e.toString(), e);
+				}
+			}
+			log.debug("Retrying {} in {} ms", urlString, backoff);
+			try {
+				Thread.sleep(backoff);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted", e);
+			}
+			backoff *= 2;
+		}
+	}
+
+	/**
+	 * Checks size and content hash of the local copy against its manifest entry before it is trusted.
+	 */
+	private static boolean isIntact(Path target, ScanManifest.Entry entry) throws IOException {
+		if(!Files.exists(target) || Files.size(target) != entry.size){
+			return false;
+		}
+		return Digests.hex(Digests.sha256(target)).equals(entry.sha256);
+	}
+
+	/**
+	 * Writes into a temp file next to target which is renamed only when complete, so partial files never survive.
+	 * @param previous validators of the local copy, null for an unconditional request
+	 * @return manifest entry of the downloaded file, or null if not modified
+	 */
+	private ScanManifest.Entry fetch(URL url, Path target, ScanManifest.Entry previous) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setConnectTimeout(CONNECT_TIMEOUT);
+		connection.setReadTimeout(READ_TIMEOUT);
+		if(previous != null){
+			if(previous.etag != null) connection.setRequestProperty("If-None-Match", previous.etag);
+			if(previous.lastModified != null) connection.setRequestProperty("If-Modified-Since", previous.lastModified);
+		}
+		try {
+			int status = connection.getResponseCode();
+			if(status == HttpURLConnection.HTTP_NOT_MODIFIED && previous != null){
+				return null;
 			}
+			if(status != HttpURLConnection.HTTP_OK){
+				throw new HttpStatusException(status);
+			}
+			Files.createDirectories(target.getParent());
+			Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".part");
+			MessageDigest digest = Digests.sha256();
+			try (InputStream in = new DigestInputStream(connection.getInputStream(), digest)) {
+				Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+				ScanManifest.Entry entry = new ScanManifest.Entry();
+				entry.size = Files.size(tmp);
+				entry.sha256 = Digests.hex(digest.digest());
+				entry.etag = connection.getHeaderField("ETag");
+				entry.lastModified = connection.getHeaderField("Last-Modified");
+				Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				return entry;
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private static class HttpStatusException extends IOException {
+		private final int status;
+
+		HttpStatusException(int status) {
+			super("HTTP " + status);
+			this.status = status;
+		}
+
+		// only server errors, timeouts and rate limiting may go away on retry. client errors like 404 won't,
+		// neither will an unexpected status such as a 304 to an unconditional request
+		boolean isRetryable() {
+			return status >= 500 || status == 408 || status == 429;
 		}
 	}
 }
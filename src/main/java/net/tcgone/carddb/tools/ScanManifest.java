@@ -0,0 +1,70 @@
+package net.tcgone.carddb.tools;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Per set record of downloaded scans (scans/&lt;set id&gt;/manifest.json) with the http validators needed for
+ * conditional re-downloads. Thread safe.
+ * @author axpendix@hotmail.com
+ */
+public class ScanManifest {
+
+	public static class Entry {
+		public long size;
+		public String sha256;
+		public String etag;
+		public String lastModified;
+	}
+
+	private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+	private final Path path;
+	private final ConcurrentSkipListMap<String, Entry> entries;
+
+	private ScanManifest(Path path, ConcurrentSkipListMap<String, Entry> entries) {
+		this.path = path;
+		this.entries = entries;
+	}
+
+	public static ScanManifest load(Path dir) throws IOException {
+		Path path = dir.resolve("manifest.json");
+		ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+		if(Files.exists(path)){
+			try (InputStream in = Files.newInputStream(path)) {
+				entries = mapper.readValue(in, new TypeReference<ConcurrentSkipListMap<String, Entry>>(){});
+			}
+		}
+		return new ScanManifest(path, entries);
+	}
+
+	public Entry get(String filename) {
+		return entries.get(filename);
+	}
+
+	public void put(String filename, Entry entry) {
+		entries.put(filename, entry);
+	}
+
+	public void save() throws IOException {
+		Files.createDirectories(path.getParent());
+		Path tmp = Files.createTempFile(path.getParent(), "manifest", ".tmp");
+		try {
+			try (OutputStream out = Files.newOutputStream(tmp)) {
+				mapper.writeValue(out, entries);
+			}
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+}
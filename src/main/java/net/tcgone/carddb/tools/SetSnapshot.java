@@ -0,0 +1,501 @@
+package net.tcgone.carddb.tools;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import net.tcgone.carddb.model.*;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Binary snapshot of a set yaml file, written next to it (&lt;name&gt;.snapshot) so that --yaml can skip yaml
+ * parsing. Strings are interned into a table and referenced by index, which also makes equal values loaded from a
+ * snapshot share one instance.
+ * <p>
+ * File layout: magic, version, size and sha-256 of the yaml file it was written with, string table (count, then
+ * int length + utf-8 bytes each), then the set and its cards. Snapshots are read into heap buffers, never mapped,
+ * so writing a new one over a snapshot read in the same run works on every platform. They are only used while the
+ * yaml file still has the recorded size and content. Hashing the yaml is far cheaper than parsing it,
+ * and unlike timestamps it cannot miss an edit.
+ * <p>
+ * Fields are encoded explicitly. If the model has public fields this class does not know of, snapshots are
+ * neither written nor read, and everything goes through yaml. Card.merged is never written to yaml, so it is
+ * not encoded either.
+ * @author axpendix@hotmail.com
+ */
+public final class SetSnapshot {
+
+	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(SetSnapshot.class);
+
+	private static final int MAGIC = 0x43444253; // CDBS
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 48;
+	private static final String EXTENSION = ".snapshot";
+
+	private static final Map<Class<?>, java.util.Set<String>> KNOWN_FIELDS = ImmutableMap.<Class<?>, java.util.Set<String>>builder()
+			.put(SetFile.class, ImmutableSet.of("set", "cards"))
+			.put(net.tcgone.carddb.model.Set.class, ImmutableSet.of("id", "name", "abbr", "enumId", "pioId"))
+			.put(Card.class, ImmutableSet.of("id", "pioId", "enumId", "name", "number", "artist", "rarity", "set",
+					"superType", "subTypes", "types", "hp", "retreatCost", "abilities", "moves", "weaknesses",
+					"resistances", "text", "energy", "evolvesFrom", "evolvesTo", "nationalPokedexNumber", "copyOf",
+					"copyType", "merged"))
+			.put(Ability.class, ImmutableSet.of("type", "name", "text"))
+			.put(Move.class, ImmutableSet.of("name", "cost", "damage", "text"))
+			.put(WeaknessResistance.class, ImmutableSet.of("type", "value"))
+			.build();
+
+	private static final boolean supported = checkSchema();
+
+	private SetSnapshot() {
+	}
+
+	public static boolean isSupported() {
+		return supported;
+	}
+
+	public static Path pathOf(Path yaml) {
+		String name = yaml.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		return yaml.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + EXTENSION);
+	}
+
+	/**
+	 * @return true if the snapshot of yaml exists and was written with its current content
+	 */
+	public static boolean isFresh(Path yaml) throws IOException {
+		return supported && read(yaml, true) != null;
+	}
+
+	/**
+	 * @return set file read from the snapshot of yaml, or null if there is no fresh snapshot of it
+	 */
+	public static SetFile readIfFresh(Path yaml) throws IOException {
+		if(!supported){
+			return null;
+		}
+		ByteBuffer buffer = read(yaml, false);
+		if(buffer == null){
+			return null;
+		}
+		try {
+			return new Decoder(buffer).setFile();
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException e) {
+			log.warn("Corrupt snapshot {}, reading yaml instead", pathOf(yaml));
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the snapshot of a set file which has just been written to yaml.
+	 */
+	public static void write(SetFile setFile, Path yaml) throws IOException {
+		if(!supported){
+			return;
+		}
+		Encoder encoder = new Encoder();
+		encoder.setFile(setFile);
+		Path path = pathOf(yaml);
+		Path parent = path.toAbsolutePath().getParent();
+		Path tmp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(Files.size(yaml));
+				out.write(Digests.sha256(yaml));
+				encoder.writeTo(out);
+			}
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	// snapshot (or only its header) positioned after the header, or null if missing or stale
+	private static ByteBuffer read(Path yaml, boolean headerOnly) throws IOException {
+		Path path = pathOf(yaml);
+		if(!Files.exists(path) || !Files.exists(yaml)){
+			return null;
+		}
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if(size < HEADER_SIZE){
+				return null;
+			}
+			buffer = ByteBuffer.allocate(headerOnly ? HEADER_SIZE : Math.toIntExact(size));
+			while (buffer.hasRemaining()) {
+				if(channel.read(buffer) < 0){
+					break;
+				}
+			}
+			buffer.flip();
+		}
+		if(buffer.remaining() < HEADER_SIZE){
+			return null;
+		}
+		if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != Files.size(yaml)){
+			return null;
+		}
+		byte[] hash = new byte[32];
+		buffer.get(hash);
+		if(!Arrays.equals(hash, Digests.sha256(yaml))){
+			return null;
+		}
+		return buffer;
+	}
+
+	private static boolean checkSchema() {
+		for (Map.Entry<Class<?>, java.util.Set<String>> entry : KNOWN_FIELDS.entrySet()) {
+			for (Field field : entry.getKey().getFields()) {
+				if(!Modifier.isStatic(field.getModifiers()) && !entry.getValue().contains(field.getName())){
+					log.info("{}.{} is not covered by set snapshots, yaml files will be read as yaml", entry.getKey().getSimpleName(), field.getName());
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Encodes into an in memory body, {@link #writeTo(DataOutputStream)} then writes the string table and the body.
+	 */
+	static final class Encoder {
+		private final Map<String, Integer> indices = new HashMap<>();
+		private final List<String> strings = new ArrayList<>();
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+
+		void writeTo(DataOutputStream target) throws IOException {
+			target.writeInt(strings.size());
+			for (String s : strings) {
+				byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+				target.writeInt(utf8.length);
+				target.write(utf8);
+			}
+			out.flush();
+			bytes.writeTo(target);
+		}
+
+		void setFile(SetFile setFile) throws IOException {
+			set(setFile.set);
+			if(setFile.cards == null){
+				out.writeInt(-1);
+				return;
+			}
+			out.writeInt(setFile.cards.size());
+			for (Card card : setFile.cards) {
+				card(card);
+			}
+		}
+
+		/**
+		 * Cards along with their sets, each distinct set is written once.
+		 */
+		void cards(List<Card> cards) throws IOException {
+			Map<net.tcgone.carddb.model.Set, Integer> setIndices = new IdentityHashMap<>();
+			List<net.tcgone.carddb.model.Set> sets = new ArrayList<>();
+			for (Card card : cards) {
+				if(card.set != null && !setIndices.containsKey(card.set)){
+					setIndices.put(card.set, sets.size());
+					sets.add(card.set);
+				}
+			}
+			out.writeInt(sets.size());
+			for (net.tcgone.carddb.model.Set set : sets) {
+				set(set);
+			}
+			out.writeInt(cards.size());
+			for (Card card : cards) {
+				out.writeInt(card.set == null ? -1 : setIndices.get(card.set));
+				card(card);
+			}
+		}
+
+		void set(net.tcgone.carddb.model.Set set) throws IOException {
+			out.writeBoolean(set != null);
+			if(set != null){
+				string(set.id);
+				string(set.name);
+				string(set.abbr);
+				string(set.enumId);
+				string(set.pioId);
+			}
+		}
+
+		void card(Card card) throws IOException {
+			string(card.id);
+			string(card.pioId);
+			string(card.enumId);
+			string(card.name);
+			string(card.number);
+			string(card.artist);
+			string(card.rarity);
+			string(card.superType);
+			strings(card.subTypes);
+			strings(card.types);
+			integer(card.hp);
+			integer(card.retreatCost);
+			if(card.abilities == null){
+				out.writeInt(-1);
+			} else {
+				out.writeInt(card.abilities.size());
+				for (Ability ability : card.abilities) {
+					out.writeBoolean(ability != null);
+					if(ability != null){
+						string(ability.type);
+						string(ability.name);
+						string(ability.text);
+					}
+				}
+			}
+			if(card.moves == null){
+				out.writeInt(-1);
+			} else {
+				out.writeInt(card.moves.size());
+				for (Move move : card.moves) {
+					out.writeBoolean(move != null);
+					if(move != null){
+						string(move.name);
+						strings(move.cost);
+						string(move.damage);
+						string(move.text);
+					}
+				}
+			}
+			weaknessResistances(card.weaknesses);
+			weaknessResistances(card.resistances);
+			strings(card.text);
+			if(card.energy == null){
+				out.writeInt(-1);
+			} else {
+				out.writeInt(card.energy.size());
+				for (List<String> energy : card.energy) {
+					strings(energy);
+				}
+			}
+			string(card.evolvesFrom);
+			strings(card.evolvesTo);
+			integer(card.nationalPokedexNumber);
+			string(card.copyOf);
+			string(card.copyType);
+		}
+
+		void weaknessResistances(List<WeaknessResistance> list) throws IOException {
+			if(list == null){
+				out.writeInt(-1);
+				return;
+			}
+			out.writeInt(list.size());
+			for (WeaknessResistance wr : list) {
+				out.writeBoolean(wr != null);
+				if(wr != null){
+					string(wr.type);
+					string(wr.value);
+				}
+			}
+		}
+
+		void strings(List<String> list) throws IOException {
+			if(list == null){
+				out.writeInt(-1);
+				return;
+			}
+			out.writeInt(list.size());
+			for (String s : list) {
+				string(s);
+			}
+		}
+
+		void string(String s) throws IOException {
+			if(s == null){
+				out.writeInt(-1);
+				return;
+			}
+			Integer index = indices.get(s);
+			if(index == null){
+				index = strings.size();
+				strings.add(s);
+				indices.put(s, index);
+			}
+			out.writeInt(index);
+		}
+
+		void integer(Integer i) throws IOException {
+			out.writeBoolean(i != null);
+			if(i != null){
+				out.writeInt(i);
+			}
+		}
+	}
+
+	/**
+	 * Reads what {@link Encoder#writeTo(DataOutputStream)} wrote, starting at the current position of buffer.
+	 */
+	static final class Decoder {
+		private final ByteBuffer buffer;
+		private final String[] strings;
+
+		Decoder(ByteBuffer buffer) {
+			this.buffer = buffer;
+			strings = new String[buffer.getInt()];
+			for (int i = 0; i < strings.length; i++) {
+				byte[] bytes = new byte[buffer.getInt()];
+				buffer.get(bytes);
+				strings[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+		}
+
+		SetFile setFile() {
+			SetFile setFile = new SetFile();
+			setFile.set = set();
+			int size = buffer.getInt();
+			if(size >= 0){
+				setFile.cards = new ArrayList<>(size);
+				for (int i = 0; i < size; i++) {
+					setFile.cards.add(card());
+				}
+			}
+			return setFile;
+		}
+
+		List<Card> cards() {
+			net.tcgone.carddb.model.Set[] sets = new net.tcgone.carddb.model.Set[buffer.getInt()];
+			for (int i = 0; i < sets.length; i++) {
+				sets[i] = set();
+			}
+			int size = buffer.getInt();
+			List<Card> cards = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				int setIndex = buffer.getInt();
+				Card card = card();
+				card.set = setIndex < 0 ? null : sets[setIndex];
+				cards.add(card);
+			}
+			return cards;
+		}
+
+		net.tcgone.carddb.model.Set set() {
+			if(buffer.get() == 0){
+				return null;
+			}
+			net.tcgone.carddb.model.Set set = new net.tcgone.carddb.model.Set();
+			set.id = string();
+			set.name = string();
+			set.abbr = string();
+			set.enumId = string();
+			set.pioId = string();
+			return set;
+		}
+
+		Card card() {
+			Card card = new Card();
+			card.id = string();
+			card.pioId = string();
+			card.enumId = string();
+			card.name = string();
+			card.number = string();
+			card.artist = string();
+			card.rarity = string();
+			card.superType = string();
+			card.subTypes = strings();
+			card.types = strings();
+			card.hp = integer();
+			card.retreatCost = integer();
+			int size = buffer.getInt();
+			if(size >= 0){
+				card.abilities = new ArrayList<>(size);
+				for (int i = 0; i < size; i++) {
+					Ability ability = null;
+					if(buffer.get() != 0){
+						ability = new Ability();
+						ability.type = string();
+						ability.name = string();
+						ability.text = string();
+					}
+					card.abilities.add(ability);
+				}
+			}
+			size = buffer.getInt();
+			if(size >= 0){
+				card.moves = new ArrayList<>(size);
+				for (int i = 0; i < size; i++) {
+					Move move = null;
+					if(buffer.get() != 0){
+						move = new Move();
+						move.name = string();
+						move.cost = strings();
+						move.damage = string();
+						move.text = string();
+					}
+					card.moves.add(move);
+				}
+			}
+			card.weaknesses = weaknessResistances();
+			card.resistances = weaknessResistances();
+			card.text = strings();
+			size = buffer.getInt();
+			if(size >= 0){
+				card.energy = new ArrayList<>(size);
+				for (int i = 0; i < size; i++) {
+					card.energy.add(strings());
+				}
+			}
+			card.evolvesFrom = string();
+			card.evolvesTo = strings();
+			card.nationalPokedexNumber = integer();
+			card.copyOf = string();
+			card.copyType = string();
+			return card;
+		}
+
+		List<WeaknessResistance> weaknessResistances() {
+			int size = buffer.getInt();
+			if(size < 0){
+				return null;
+			}
+			List<WeaknessResistance> list = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				WeaknessResistance wr = null;
+				if(buffer.get() != 0){
+					wr = new WeaknessResistance();
+					wr.type = string();
+					wr.value = string();
+				}
+				list.add(wr);
+			}
+			return list;
+		}
+
+		List<String> strings() {
+			int size = buffer.getInt();
+			if(size < 0){
+				return null;
+			}
+			List<String> list = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				list.add(string());
+			}
+			return list;
+		}
+
+		String string() {
+			int index = buffer.getInt();
+			if(index < -1 || index >= strings.length){
+				throw new IllegalArgumentException("string index " + index);
+			}
+			return index < 0 ? null : strings[index];
+		}
+
+		Integer integer() {
+			return buffer.get() != 0 ? buffer.getInt() : null;
+		}
+	}
+}
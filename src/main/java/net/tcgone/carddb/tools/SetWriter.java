@@ -21,15 +21,21 @@ import net.tcgone.carddb.model.Move;
 import net.tcgone.carddb.model.SetFile;
 import org.springframework.stereotype.Component;
 import org.yaml.snakeyaml.DumperOptions;
-import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.emitter.Emitter;
 import org.yaml.snakeyaml.introspector.Property;
 import org.yaml.snakeyaml.nodes.*;
 import org.yaml.snakeyaml.representer.Representer;
+import org.yaml.snakeyaml.resolver.Resolver;
+import org.yaml.snakeyaml.serializer.Serializer;
 
 import javax.annotation.PostConstruct;
 import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author axpendix@hotmail.com
@@ -37,17 +43,38 @@ import java.util.*;
 @Component
 public class SetWriter {
 
-    private Yaml yaml;
+    private ThreadLocal<Representer> representers;
+    private DumperOptions dumperOptions;
+    private CustomPropertyUtils propertyUtils;
+    private final Resolver resolver = new Resolver();
+    // instance fields of the model classes normalize copies, shared by the writer threads
+    private static final Map<Class<?>, Field[]> COPIED_FIELDS = new ConcurrentHashMap<>();
     private ObjectMapper objectMapper;
+    private Path outputDir = Paths.get("output");
+
+    public void setOutputDir(Path outputDir) {
+        this.outputDir = outputDir;
+    }
 
     @PostConstruct
-    private void init() {
+    void init() {
         DumperOptions options = new DumperOptions();
         options.setAllowUnicode(true);
         options.setDefaultScalarStyle(DumperOptions.ScalarStyle.PLAIN);
         options.setDefaultFlowStyle(DumperOptions.FlowStyle.AUTO);
+        dumperOptions = options;
+        propertyUtils = new CustomPropertyUtils();
+        propertyUtils.setAllowReadOnlyProperties(options.isAllowReadOnlyProperties());
+        // representers keep state while representing (representedObjects), so every writer thread gets its own,
+        // all sharing one thread safe property metadata cache
+        representers = ThreadLocal.withInitial(this::createRepresenter);
+
+//        objectMapper = new ObjectMapper(new YAMLFactory().enable(YAMLGenerator.Feature.MINIMIZE_QUOTES));
+
+    }
 
-        CustomPropertyUtils customPropertyUtils = new CustomPropertyUtils();
+    private Representer createRepresenter() {
+        DumperOptions options = dumperOptions;
         Representer customRepresenter = new Representer() {
             @Override
             protected NodeTuple representJavaBeanProperty(Object javaBean, Property property, Object propertyValue, Tag customTag) {
@@ -96,6 +123,14 @@ public class SetWriter {
                 return node;
             }
 
+            @Override
+            protected Node representSequence(Tag tag, Iterable<?> sequence, DumperOptions.FlowStyle flowStyle) {
+                Node node = super.representSequence(tag, sequence, flowStyle);
+                // lists are shared between cards (ValuePool), never write them as anchors and aliases
+                representedObjects.remove(sequence);
+                return node;
+            }
+
             @Override
             protected Node representMapping(Tag tag, Map<?, ?> mapping, DumperOptions.FlowStyle flowStyle) {
                 List<NodeTuple> value = new ArrayList<NodeTuple>(mapping.size());
@@ -123,45 +158,110 @@ public class SetWriter {
                 return node;
             }
         };
-        customRepresenter.setPropertyUtils(customPropertyUtils);
-        yaml = new Yaml(customRepresenter, options);
-
-//        objectMapper = new ObjectMapper(new YAMLFactory().enable(YAMLGenerator.Feature.MINIMIZE_QUOTES));
-
+        customRepresenter.setPropertyUtils(propertyUtils);
+        // what new Yaml(representer, options) would apply
+        customRepresenter.setDefaultFlowStyle(options.getDefaultFlowStyle());
+        customRepresenter.setDefaultScalarStyle(options.getDefaultScalarStyle());
+        return customRepresenter;
     }
 
-    private void write(SetFile setFile, String filename) throws IOException {
+    private OutputTracker.Outcome write(SetFile setFile, Path target, OutputTracker tracker) throws IOException {
         //        objectMapper.writeValue(new File(filename),setFile);
+        return tracker.write(target, out -> write(setFile, out));
+    }
+
+    /**
+     * Copy of the set file as it is written: cards without their set and merged, moves without empty
+     * damage/text/cost. The cards given stay untouched, watch mode compares and exports them again later.
+     */
+    static SetFile normalize(SetFile setFile) {
+        SetFile normalized = shallowCopy(setFile);
+        normalized.cards = new ArrayList<>(setFile.cards.size());
         for (Card card : setFile.cards) {
-            card.set=null;
-            card.merged=null;
+            Card copy = shallowCopy(card);
+            copy.set=null;
+            copy.merged=null;
             if(card.moves!=null){
+                copy.moves = new ArrayList<>(card.moves.size());
                 for (Move move : card.moves) {
-                    if(move.damage!=null && move.damage.isEmpty()) {
-                        move.damage = null;
-                    }
-                    if(move.text!=null && move.text.isEmpty()){
-                        move.text = null;
-                    }
-                    if(move.cost!=null && move.cost.size()==1 && move.cost.get(0)==null){
-                        move.cost=new ArrayList<>();
+                    Move moveCopy = move == null ? null : shallowCopy(move);
+                    if(moveCopy!=null){
+                        if(moveCopy.damage!=null && moveCopy.damage.isEmpty()) {
+                            moveCopy.damage = null;
+                        }
+                        if(moveCopy.text!=null && moveCopy.text.isEmpty()){
+                            moveCopy.text = null;
+                        }
+                        if(moveCopy.cost!=null && moveCopy.cost.size()==1 && moveCopy.cost.get(0)==null){
+                            moveCopy.cost=new ArrayList<>();
+                        }
                     }
+                    copy.moves.add(moveCopy);
                 }
             }
+            normalized.cards.add(copy);
         }
-        String dump = yaml.dumpAs(setFile, Tag.MAP, null);
-        BufferedWriter out = new BufferedWriter
-                (new OutputStreamWriter(new FileOutputStream(filename), StandardCharsets.UTF_8));
-        out.write(dump);
-        out.close();
+        return normalized;
     }
 
-    public void writeAll(Collection<SetFile> setFiles) throws IOException {
-        new File("output").mkdirs();
-        for (SetFile setFile : setFiles) {
-            String filename = String.format("output/%s-%s.yaml", setFile.set.id, setFile.set.enumId.toLowerCase(Locale.ENGLISH));
-            this.write(setFile, filename);
+    private static <T> T shallowCopy(T original) {
+        try {
+            @SuppressWarnings("unchecked")
+            T copy = (T) original.getClass().getDeclaredConstructor().newInstance();
+            for (Field field : COPIED_FIELDS.computeIfAbsent(original.getClass(), SetWriter::instanceFields)) {
+                field.set(copy, field.get(original));
+            }
+            return copy;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot copy " + original.getClass().getName(), e);
+        }
+    }
+
+    private static Field[] instanceFields(Class<?> type) {
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if(!Modifier.isStatic(field.getModifiers())){
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
         }
+        return fields.toArray(new Field[0]);
+    }
+
+    /**
+     * Same output as yaml.dumpAs(setFile, Tag.MAP, null), but events are emitted straight into the writer
+     * instead of building the whole document as a String first.
+     */
+    void write(SetFile setFile, Writer writer) throws IOException {
+        Serializer serializer = new Serializer(new Emitter(writer, dumperOptions), resolver, dumperOptions, Tag.MAP);
+        serializer.open();
+        serializer.serialize(representers.get().represent(setFile));
+        serializer.close();
+    }
+
+    public OutputTracker writeAll(Collection<SetFile> setFiles) throws Exception {
+        return writeAll(setFiles, 1);
+    }
+
+    /**
+     * Renders set files on parallelism threads, each with its own representer.
+     * Files whose content did not change are left untouched. Each yaml gets a {@link SetSnapshot} next to it.
+     */
+    public OutputTracker writeAll(Collection<SetFile> setFiles, int parallelism) throws Exception {
+        outputDir.toFile().mkdirs();
+        OutputTracker tracker = new OutputTracker("YAMLs");
+        ParallelTasks.forEach(setFiles, parallelism, setFile -> {
+            Path yaml = outputDir.resolve(String.format("%s-%s.yaml", setFile.set.id, setFile.set.enumId.toLowerCase(Locale.ENGLISH)));
+            SetFile normalized = normalize(setFile);
+            OutputTracker.Outcome outcome = this.write(normalized, yaml, tracker);
+            if(outcome != OutputTracker.Outcome.UNCHANGED || !SetSnapshot.isFresh(yaml)){
+                SetSnapshot.write(normalized, yaml);
+            }
+        });
+        tracker.logSummary();
+        return tracker;
     }
 
     public Map<String, SetFile> prepareSetFiles(List<Card> cards) {
@@ -190,13 +290,49 @@ public class SetWriter {
         return setFileMap;
     }
     public void prepareReprints(Collection<SetFile> setFiles){
-        Map<EqualityCard,Card> map=new HashMap<>();
+        prepareReprints(setFiles, null);
+    }
+
+    /**
+     * @param reprintIndex optional index of the whole database, resolves reprints of cards not loaded in this run.
+     *                     Hits on cards that are loaded are only trusted if their content still matches.
+     */
+    public void prepareReprints(Collection<SetFile> setFiles, ReprintIndex reprintIndex){
+        // fingerprint -> first cards seen with it, deep equality only runs to confirm a fingerprint match
+        Map<Long,List<Card>> map=new HashMap<>();
+        Map<String,Card> loaded=new HashMap<>();
+        if(reprintIndex!=null){
+            for (SetFile setFile : setFiles) {
+                for (Card c : setFile.cards) {
+                    loaded.putIfAbsent(c.id, c);
+                }
+            }
+        }
         for (SetFile setFile : setFiles) {
             for (Card c : setFile.cards) {
-//                int hash = Objects.hash(c.name, c.types, c.superType, c.subTypes, c.evolvesFrom, c.hp, c.retreatCost, c.abilities, c.moves, c.weaknesses, c.resistances, c.text, c.energy);
-                EqualityCard ec = new EqualityCard(c);
-                if(map.containsKey(ec)){
-                    Card oc = map.get(ec);
+                long fingerprint = CardFingerprint.of(c);
+                String originalId = null;
+                if(reprintIndex!=null){
+                    originalId = reprintIndex.find(fingerprint);
+                    Card original = originalId != null ? loaded.get(originalId) : null;
+                    if(c.id.equals(originalId)){
+                        // this is the original itself
+                        originalId = null;
+                    } else if(original!=null && !EqualityCard.sameContent(original, c)){
+                        // stale entry, the original has been edited since it was indexed
+                        originalId = null;
+                    }
+                }
+                List<Card> candidates = map.get(fingerprint);
+                if(originalId==null && candidates!=null){
+                    for (Card candidate : candidates) {
+                        if(EqualityCard.sameContent(candidate, c)){
+                            originalId = candidate.id;
+                            break;
+                        }
+                    }
+                }
+                if(originalId!=null){
                     if(c.rarity.equalsIgnoreCase("Ultra Rare")) {
                         // most likely full art
                         c.copyType="Full Art";
@@ -206,9 +342,9 @@ public class SetWriter {
                     } else {
                         c.copyType="Reprint";
                     }
-                    c.copyOf=oc.id;
+                    c.copyOf=originalId;
                 } else {
-                    map.put(ec,c);
+                    map.computeIfAbsent(fingerprint, k -> new ArrayList<>(1)).add(c);
                 }
             }
         }
@@ -0,0 +1,67 @@
+package net.tcgone.carddb.tools;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replaces a fixed table of tokens in a single pass over a trie, picking the longest token at each position.
+ * Equivalent to chaining {@link String#replace} in table order as long as replacement outputs never form
+ * other tokens and longer tokens come before their prefixes. Thread safe.
+ * @author axpendix@hotmail.com
+ */
+public class TokenReplacer {
+
+	private static class Node {
+		private final Map<Character, Node> children = new HashMap<>();
+		private String replacement;
+	}
+
+	private final Node root = new Node();
+
+	public TokenReplacer(Map<String, String> replacements) {
+		for (Map.Entry<String, String> entry : replacements.entrySet()) {
+			if(entry.getKey().isEmpty()){
+				throw new IllegalArgumentException("empty token");
+			}
+			Node node = root;
+			for (char ch : entry.getKey().toCharArray()) {
+				node = node.children.computeIfAbsent(ch, k -> new Node());
+			}
+			node.replacement = entry.getValue();
+		}
+	}
+
+	public String replace(String s) {
+		if(s==null)return null;
+		StringBuilder sb = null; // allocated on first match only, most lines have nothing to replace
+		int copied = 0;
+		int i = 0;
+		int length = s.length();
+		while (i < length) {
+			Node node = root.children.get(s.charAt(i));
+			String replacement = null;
+			int matchEnd = -1;
+			for (int j = i + 1; node != null; j++) {
+				if(node.replacement != null){
+					replacement = node.replacement;
+					matchEnd = j;
+				}
+				if(j == length) break;
+				node = node.children.get(s.charAt(j));
+			}
+			if(replacement == null){
+				i++;
+				continue;
+			}
+			if(sb == null){
+				sb = new StringBuilder(length + 16);
+			}
+			sb.append(s, copied, i).append(replacement);
+			copied = i = matchEnd;
+		}
+		if(sb == null){
+			return s;
+		}
+		return sb.append(s, copied, length).toString();
+	}
+}
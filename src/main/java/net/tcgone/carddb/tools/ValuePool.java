@@ -0,0 +1,148 @@
+package net.tcgone.carddb.tools;
+
+import net.tcgone.carddb.model.Ability;
+import net.tcgone.carddb.model.Card;
+import net.tcgone.carddb.model.Move;
+import net.tcgone.carddb.model.WeaknessResistance;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Canonicalizes repeated card values: one instance per distinct string, and one unmodifiable list per distinct
+ * string list (types, sub types, costs...), shared by all cards having it. Thread safe.
+ * <p>
+ * Cards must not be modified in place once pooled, assign new lists instead.
+ * @author axpendix@hotmail.com
+ */
+@Component
+public class ValuePool {
+
+	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(ValuePool.class);
+
+	// rough retained sizes on a 64 bit jvm with compressed oops
+	private static final int STRING_OVERHEAD = 40;
+	private static final int LIST_OVERHEAD = 40;
+	private static final int REFERENCE = 4;
+
+	private final ConcurrentMap<String, String> strings = new ConcurrentHashMap<>();
+	private final ConcurrentMap<List<String>, List<String>> lists = new ConcurrentHashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder bytesSaved = new LongAdder();
+
+	public String intern(String s) {
+		if(s == null){
+			return null;
+		}
+		String pooled = strings.putIfAbsent(s, s);
+		if(pooled == null){
+			return s;
+		}
+		if(pooled != s){
+			hits.increment();
+			bytesSaved.add(STRING_OVERHEAD + 2L * s.length());
+		}
+		return pooled;
+	}
+
+	/**
+	 * @return unmodifiable list equal to list, with pooled elements
+	 */
+	public List<String> intern(List<String> list) {
+		if(list == null){
+			return null;
+		}
+		List<String> pooled = lists.get(list);
+		if(pooled == null){
+			List<String> copy = new ArrayList<>(list.size());
+			for (String s : list) {
+				copy.add(intern(s));
+			}
+			pooled = Collections.unmodifiableList(copy);
+			List<String> previous = lists.putIfAbsent(pooled, pooled);
+			if(previous == null){
+				return pooled;
+			}
+			pooled = previous;
+		} else {
+			for (String s : list) {
+				intern(s);
+			}
+		}
+		hits.increment();
+		bytesSaved.add(LIST_OVERHEAD + (long) REFERENCE * list.size());
+		return pooled;
+	}
+
+	/**
+	 * Pools values of card in place.
+	 */
+	public Card intern(Card card) {
+		card.name = intern(card.name);
+		card.artist = intern(card.artist);
+		card.rarity = intern(card.rarity);
+		card.superType = intern(card.superType);
+		card.subTypes = intern(card.subTypes);
+		card.types = intern(card.types);
+		card.evolvesFrom = intern(card.evolvesFrom);
+		card.evolvesTo = intern(card.evolvesTo);
+		card.text = intern(card.text);
+		card.copyType = intern(card.copyType);
+		if(card.abilities != null){
+			for (Ability ability : card.abilities) {
+				if(ability == null) continue;
+				ability.type = intern(ability.type);
+				ability.name = intern(ability.name);
+				ability.text = intern(ability.text);
+			}
+		}
+		if(card.moves != null){
+			for (Move move : card.moves) {
+				if(move == null) continue;
+				move.name = intern(move.name);
+				move.cost = intern(move.cost);
+				move.damage = intern(move.damage);
+				move.text = intern(move.text);
+			}
+		}
+		internWeaknessResistances(card.weaknesses);
+		internWeaknessResistances(card.resistances);
+		if(card.energy != null){
+			List<List<String>> energy = new ArrayList<>(card.energy.size());
+			for (List<String> list : card.energy) {
+				energy.add(intern(list));
+			}
+			card.energy = energy;
+		}
+		return card;
+	}
+
+	private void internWeaknessResistances(List<WeaknessResistance> list) {
+		if(list == null){
+			return;
+		}
+		for (WeaknessResistance wr : list) {
+			if(wr == null) continue;
+			wr.type = intern(wr.type);
+			wr.value = intern(wr.value);
+		}
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getBytesSaved() {
+		return bytesSaved.sum();
+	}
+
+	public void logSummary() {
+		log.info("Value pool has {} strings and {} lists, {} duplicates shared, ~{} KB saved",
+				strings.size(), lists.size(), getHits(), getBytesSaved() / 1024);
+	}
+}
@@ -0,0 +1,145 @@
+package net.tcgone.carddb.tools;
+
+import net.tcgone.carddb.model.Card;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author axpendix@hotmail.com
+ */
+public class ApplicationTest {
+
+	private static final int COUNT = 20_000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Application application;
+	private String pio;
+
+	@Before
+	public void setUp() throws Exception {
+		ValuePool valuePool = new ValuePool();
+		application = new Application();
+		ReflectionTestUtils.setField(application, "valuePool", valuePool);
+		ReflectionTestUtils.setField(application, "pioReader", new PioReader(valuePool) {
+			@Override
+			public List<PioCard> parse(InputStream inputStream) {
+				throw new AssertionError("sequential loading must stream pio files");
+			}
+		});
+		Path path = folder.getRoot().toPath().resolve("large.json");
+		SyntheticPio.write(path, COUNT);
+		pio = path.toString();
+	}
+
+	@Test
+	public void readPioStreamsWithoutCache() throws Exception {
+		List<Card> cards = application.readPio(pio, application.scanPio(pio, null, false), null);
+		assertEquals(COUNT, cards.size());
+	}
+
+	@Test
+	public void readPioStreamsOnCacheMissAndServesHits() throws Exception {
+		BuildCache cache = new BuildCache(folder.newFolder("cache").toPath(), Long.MAX_VALUE);
+		List<Card> converted = application.readPio(pio, application.scanPio(pio, cache, false), cache);
+		List<Card> cached = application.readPio(pio, application.scanPio(pio, cache, false), cache);
+		assertEquals(COUNT, cached.size());
+		assertEquals(converted.get(COUNT - 1).id, cached.get(COUNT - 1).id);
+		assertEquals(converted.get(COUNT - 1).text, cached.get(COUNT - 1).text);
+	}
+
+	@Test
+	public void reprocessKeepsCrossSetReprints() throws Exception {
+		Path output = folder.newFolder("output").toPath();
+		SetWriter setWriter = new SetWriter();
+		setWriter.init();
+		setWriter.setOutputDir(output);
+		ReflectionTestUtils.setField(application, "setWriter", setWriter);
+		ReflectionTestUtils.setField(application, "metrics", new PipelineMetrics());
+		// empty damage and text are dropped from yaml, which must not leave the loaded cards different
+		String teamUp = writePokemon("sm9", "1");
+		String unbrokenBonds = writePokemon("sm10", "2");
+		Application.Options options = new Application.Options();
+		options.exportYaml = true;
+		options.parallelism = 1;
+		Inputs inputs = application.process(Arrays.asList(teamUp, unbrokenBonds), Collections.emptyList(), options);
+		assertEquals(1, countCopyOf(output));
+		application.reprocess(inputs, unbrokenBonds, options);
+		assertEquals(1, countCopyOf(output));
+	}
+
+	@Test
+	public void concurrentReadKeepsParsedFilesBounded() throws Exception {
+		AtomicInteger waiting = new AtomicInteger();
+		AtomicInteger maxWaiting = new AtomicInteger();
+		ValuePool valuePool = new ValuePool();
+		ReflectionTestUtils.setField(application, "pioReader", new PioReader(valuePool) {
+			@Override
+			public List<PioCard> parse(InputStream inputStream) throws IOException {
+				List<PioCard> pioCards = super.parse(inputStream);
+				maxWaiting.accumulateAndGet(waiting.incrementAndGet(), Math::max);
+				return pioCards;
+			}
+
+			@Override
+			public List<Card> convert(List<PioCard> pioCards) {
+				waiting.decrementAndGet();
+				return super.convert(pioCards);
+			}
+		});
+		ReflectionTestUtils.setField(application, "setWriter", new SetWriter());
+		ReflectionTestUtils.setField(application, "metrics", new PipelineMetrics());
+		List<String> pios = new ArrayList<>();
+		for (int i = 0; i < 12; i++) {
+			Path path = folder.getRoot().toPath().resolve("small" + i + ".json");
+			SyntheticPio.write(path, 100);
+			pios.add(path.toString());
+		}
+		Application.Options options = new Application.Options();
+		options.parallelism = 2;
+		Inputs inputs = application.process(pios, Collections.emptyList(), options);
+		assertEquals(12 * 100, inputs.size());
+		assertTrue("parsed files waiting: " + maxWaiting.get(), maxWaiting.get() <= 2);
+	}
+
+	private String writePokemon(String setCode, String number) throws IOException {
+		Path path = folder.getRoot().toPath().resolve(setCode + ".json");
+		String json = "[{\"id\":\"" + setCode + "-" + number + "\",\"name\":\"Pikachu\",\"types\":[\"Lightning\"]," +
+				"\"supertype\":\"Pokémon\",\"subtype\":\"Basic\",\"hp\":\"60\",\"number\":\"" + number + "\"," +
+				"\"artist\":\"Artist\",\"rarity\":\"Common\",\"setCode\":\"" + setCode + "\"," +
+				"\"attacks\":[{\"cost\":[\"Lightning\"],\"name\":\"Thunder Jolt\",\"text\":\"\",\"damage\":\"\"}]}]";
+		Files.write(path, json.getBytes(StandardCharsets.UTF_8));
+		return path.toString();
+	}
+
+	private static int countCopyOf(Path output) throws IOException {
+		int count = 0;
+		try (DirectoryStream<Path> yamls = Files.newDirectoryStream(output, "*.yaml")) {
+			for (Path yaml : yamls) {
+				String content = new String(Files.readAllBytes(yaml), StandardCharsets.UTF_8);
+				for (int i = content.indexOf("copyOf:"); i >= 0; i = content.indexOf("copyOf:", i + 1)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,112 @@
+package net.tcgone.carddb.tools;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.tcgone.carddb.model.Card;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author axpendix@hotmail.com
+ */
+public class PioReaderTest {
+
+	private static final String FIXTURE = "/fixtures/sm10-sample.json";
+
+	// replaceTypesWithShortForms as it was before the single pass replacer, kept as the reference
+	private static class LegacyPioReader extends PioReader {
+		@Override
+		String replaceTypesWithShortForms(String s) {
+			if(s==null)return null;
+			return s
+					.replace("{F}","[F]")
+					.replace("{L}","[L]")
+					.replace("{R}","[R]")
+					.replace("{G}","[G]")
+					.replace("{W}","[W]")
+					.replace("{P}","[P]")
+					.replace("{C}","[C]")
+					.replace("{D}","[D]")
+					.replace("{M}","[M]")
+					.replace("{Y}","[Y]")
+					.replace("{N}","[N]")
+					.replace("Fighting Energy", "[F] Energy")
+					.replace("Lightning Energy", "[L] Energy")
+					.replace("Fire Energy", "[R] Energy")
+					.replace("Grass Energy", "[G] Energy")
+					.replace("Water Energy", "[W] Energy")
+					.replace("Psychic Energy", "[P] Energy")
+					.replace("Colorless Energy", "[C] Energy")
+					.replace("Darkness Energy", "[D] Energy")
+					.replace("Metal Energy", "[M] Energy")
+					.replace("Fairy Energy", "[Y] Energy")
+					.replace("Dragon Energy", "[N] Energy")
+					.replace("Fighting Pokémon", "[F] Pokémon")
+					.replace("Lightning Pokémon", "[L] Pokémon")
+					.replace("Fire Pokémon", "[R] Pokémon")
+					.replace("Grass Pokémon", "[G] Pokémon")
+					.replace("Water Pokémon", "[W] Pokémon")
+					.replace("Psychic Pokémon", "[P] Pokémon")
+					.replace("Colorless Pokémon", "[C] Pokémon")
+					.replace("Darkness Pokémon", "[D] Pokémon")
+					.replace("Metal Pokémon", "[M] Pokémon")
+					.replace("Fairy Pokémon", "[Y] Pokémon")
+					.replace("Dragon Pokémon", "[N] Pokémon")
+					.replace("Colorless", "[C]")
+					.replace("Pokemon","Pokémon")
+					.replace("`","'")
+					.replace("–","-")
+					;
+		}
+	}
+
+	@Test
+	public void convertsFixtureLikeChainedReplacements() throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		String expected = mapper.writeValueAsString(load(new LegacyPioReader()));
+		String actual = mapper.writeValueAsString(load(new PioReader()));
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void replacesShortFormsLikeChainedReplacements() {
+		PioReader reader = new PioReader();
+		PioReader legacy = new LegacyPioReader();
+		List<String> texts = Arrays.asList(null, "", "Colorless", "{C}{C}{W}", "{X} {C",
+				"Attach a Colorless Energy and a Fire Energy card.", "Each Fire Pokemon and Fire Pokémon in play",
+				"Colorless Pokémon, Colorless Pokemon", "Fire EnergyFire Energy", "Grass EnergyPokemon",
+				"Darkness Pokémon–EX `Dark`", "Fighting Energy} {Fighting Energy", "Dragon Pokémon-GX and Fairy Energy",
+				"Metal Energy, Lightning Energy, Water Energy, Psychic Energy, Dragon Energy, Fairy Pokémon");
+		for (String text : texts) {
+			assertEquals(text, legacy.replaceTypesWithShortForms(text), reader.replaceTypesWithShortForms(text));
+		}
+	}
+
+	private static List<Card> load(PioReader reader) throws IOException {
+		try (InputStream in = PioReaderTest.class.getResourceAsStream(FIXTURE)) {
+			return reader.load(in);
+		}
+	}
+
+	@Test
+	public void iterateKeepsOnlyAFewCardsAhead() throws Exception {
+		int count = 20_000;
+		SyntheticPio in = new SyntheticPio(count);
+		Iterator<Card> cards = new PioReader().iterate(in);
+		int read = 0;
+		while (cards.hasNext()) {
+			Card card = cards.next();
+			read++;
+			assertEquals("423-" + read, card.id);
+			// the parser buffers a few kilobytes of input, a materialized list would be the whole file ahead
+			assertTrue("read ahead " + (in.getProduced() - read) + " cards", in.getProduced() - read <= 100);
+		}
+		assertEquals(count, read);
+	}
+}
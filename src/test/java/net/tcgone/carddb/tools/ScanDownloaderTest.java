@@ -0,0 +1,126 @@
+package net.tcgone.carddb.tools;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.tcgone.carddb.model.Card;
+import net.tcgone.carddb.model.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the downloader against an in process http server that answers from a script of responses.
+ * @author axpendix@hotmail.com
+ */
+public class ScanDownloaderTest {
+
+	private static final byte[] SCAN = "not really a png".getBytes(StandardCharsets.UTF_8);
+	private static final String PATH = "/sm10/1_hires.png";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private HttpServer server;
+	// status codes to answer with, 200 and 304 honour the validators sent
+	private final Deque<Integer> responses = new ArrayDeque<>();
+	private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+	private ScanDownloader downloader;
+	private Path scan;
+	private List<Card> cards;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", this::respond);
+		server.start();
+		downloader = new ScanDownloader();
+		downloader.setBaseUrl("http://localhost:" + server.getAddress().getPort());
+		downloader.setScansDir(folder.getRoot().toPath());
+		Card card = new Card();
+		card.set = new Set();
+		card.set.id = "423";
+		card.set.pioId = "sm10";
+		card.number = "1";
+		cards = Collections.singletonList(card);
+		scan = folder.getRoot().toPath().resolve("423").resolve("1.png");
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	private void respond(HttpExchange exchange) throws IOException {
+		String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+		requests.add(exchange.getRequestURI().getPath() + (ifNoneMatch != null ? " If-None-Match: " + ifNoneMatch : ""));
+		int status = responses.isEmpty() ? 500 : responses.poll();
+		if(status == 200){
+			exchange.getResponseHeaders().add("ETag", "\"v1\"");
+			exchange.sendResponseHeaders(200, SCAN.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(SCAN);
+			}
+		} else {
+			exchange.sendResponseHeaders(status, -1);
+		}
+		exchange.close();
+	}
+
+	@Test
+	public void downloadsThenRevalidates() throws Exception {
+		responses.add(200);
+		assertEquals(0, downloader.downloadAll(cards, 1));
+		assertArrayEquals(SCAN, Files.readAllBytes(scan));
+
+		responses.add(304);
+		assertEquals(0, downloader.downloadAll(cards, 1));
+		assertArrayEquals(SCAN, Files.readAllBytes(scan));
+		assertEquals(Arrays.asList(PATH, PATH + " If-None-Match: \"v1\""), requests);
+	}
+
+	@Test
+	public void retriesServerErrors() throws Exception {
+		responses.add(503);
+		responses.add(200);
+		assertEquals(0, downloader.downloadAll(cards, 1));
+		assertArrayEquals(SCAN, Files.readAllBytes(scan));
+		assertEquals(Arrays.asList(PATH, PATH), requests);
+	}
+
+	@Test
+	public void downloadsCorruptedScansAgain() throws Exception {
+		responses.add(200);
+		downloader.downloadAll(cards, 1);
+		byte[] corrupted = SCAN.clone();
+		corrupted[0] ^= 1;
+		Files.write(scan, corrupted);
+
+		responses.add(200);
+		assertEquals(0, downloader.downloadAll(cards, 1));
+		assertArrayEquals(SCAN, Files.readAllBytes(scan));
+		// unconditional, the manifest entry of a corrupted file is not used to revalidate
+		assertEquals(Arrays.asList(PATH, PATH), requests);
+	}
+
+	@Test
+	public void doesNotRetryUnexpectedNotModified() throws Exception {
+		responses.add(304);
+		responses.add(200);
+		assertEquals(1, downloader.downloadAll(cards, 1));
+		assertFalse(Files.exists(scan));
+		assertEquals(Collections.singletonList(PATH), requests);
+	}
+}
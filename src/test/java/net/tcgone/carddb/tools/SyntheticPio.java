@@ -0,0 +1,78 @@
+package net.tcgone.carddb.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Pio json array of trainer cards, generated while it is read so arbitrarily large inputs take no memory.
+ * Counts how many cards have been handed out to the reader.
+ * @author axpendix@hotmail.com
+ */
+class SyntheticPio extends InputStream {
+
+	private final int count;
+	private int produced;
+	private byte[] chunk = "[".getBytes(StandardCharsets.UTF_8);
+	private int position;
+
+	SyntheticPio(int count) {
+		this.count = count;
+	}
+
+	static void write(Path path, int count) throws IOException {
+		try (InputStream in = new SyntheticPio(count)) {
+			Files.copy(in, path);
+		}
+	}
+
+	/**
+	 * @return number of cards whose json has been (at least partially) read
+	 */
+	int getProduced() {
+		return produced;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		int total = 0;
+		while (total < len) {
+			if(position == chunk.length && !nextChunk()){
+				break;
+			}
+			int n = Math.min(len - total, chunk.length - position);
+			System.arraycopy(chunk, position, b, off + total, n);
+			position += n;
+			total += n;
+		}
+		return total == 0 && len > 0 ? -1 : total;
+	}
+
+	private boolean nextChunk() {
+		if(produced > count){
+			return false;
+		}
+		String json;
+		if(produced == count){
+			json = "]";
+		} else {
+			int number = produced + 1;
+			json = (produced > 0 ? "," : "") + "{\"id\":\"sm10-" + number + "\",\"name\":\"Synthetic Item " + number + "\"," +
+					"\"supertype\":\"Trainer\",\"subtype\":\"Item\",\"number\":\"" + number + "\",\"artist\":\"Artist\"," +
+					"\"rarity\":\"Uncommon\",\"series\":\"Sun & Moon\",\"set\":\"Unbroken Bonds\",\"setCode\":\"sm10\"," +
+					"\"text\":[\"Search your deck for a Grass Pokemon, reveal it, and put it into your hand. Then, shuffle your deck.\"]}";
+		}
+		produced++;
+		chunk = json.getBytes(StandardCharsets.UTF_8);
+		position = 0;
+		return true;
+	}
+}